@@ -7,6 +7,7 @@ version = "4.8.3"
 plugins {
     `java-library`
     distribution
+    alias(libs.plugins.jmh)
 }
 
 repositories {
@@ -35,6 +36,14 @@ tasks.named<Test>("test") {
     useJUnitPlatform()
 }
 
+// BENCHMARKS IN src/jmh/java, RUN WITH ./gradlew jmh OR FOR ONE BENCHMARK ./gradlew jmh -Pbenchmark=<name>
+jmh {
+    jmhVersion = "1.37"
+    if (project.hasProperty("benchmark")) {
+        includes = listOf(project.property("benchmark").toString())
+    }
+}
+
 tasks.javadoc {
     (options as StandardJavadocDocletOptions).addBooleanOption("html5", true)
 }
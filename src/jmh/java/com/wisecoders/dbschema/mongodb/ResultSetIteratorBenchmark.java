@@ -0,0 +1,71 @@
+package com.wisecoders.dbschema.mongodb;
+
+import com.wisecoders.dbschema.mongodb.resultSet.ResultSetIterator;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading an expanded result set from a synthetic iterator. The first MAX_READ_AHEAD rows are served from the read-ahead buffer.
+ * The drain benchmarks compare the buffer used before, an ArrayList emptied with remove(0), with the ArrayDeque used now.
+ * Run with: ./gradlew jmh -Pbenchmark=ResultSetIteratorBenchmark
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class ResultSetIteratorBenchmark {
+
+    @Param({ "300", "10000" })
+    public int rowCount;
+
+    private List<Document> documents;
+
+    @Setup
+    public void setup(){
+        documents = new ArrayList<>();
+        for ( int i = 0; i < rowCount; i++ ){
+            documents.add( new Document("_id", i ).append("name", "name" + i ).append("address", new Document("city", "Zurich")));
+        }
+    }
+
+    @Benchmark
+    public long expandedResultSet() throws SQLException {
+        final ResultSetIterator rs = new ResultSetIterator( documents.iterator(), true );
+        long sum = 0;
+        while ( rs.next() ){
+            sum += rs.getInt( 1 );
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long drainArrayListBefore(){
+        final List<Object> readAhead = new ArrayList<>( documents );
+        long sum = 0;
+        while ( !readAhead.isEmpty() ){
+            sum += ((Document)readAhead.remove( 0 )).getInteger("_id");
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long drainArrayDequeAfter(){
+        final ArrayDeque<Object> readAhead = new ArrayDeque<>( documents );
+        long sum = 0;
+        while ( !readAhead.isEmpty() ){
+            sum += ((Document)readAhead.poll()).getInteger("_id");
+        }
+        return sum;
+    }
+}
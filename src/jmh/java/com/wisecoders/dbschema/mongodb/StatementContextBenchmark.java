@@ -0,0 +1,85 @@
+package com.wisecoders.dbschema.mongodb;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The fixed JavaScript cost of one statement, without the MongoDB round trip.
+ * The 'before' benchmarks do what the driver did before the shared engine: one context per connection on its own engine,
+ * and for each statement init.js read from the classpath and evaluated again, and the statement parsed again.
+ * Run with: ./gradlew jmh -Pbenchmark=StatementContextBenchmark
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class StatementContextBenchmark {
+
+    private static final String STATEMENT = "ObjectId('5f1e4c2b9d3e2a1b2c3d4e5f').toHexString()";
+
+    private Context ownEngineContext;
+    private Context sharedEngineContext;
+    private ScriptCache scriptCache;
+    private Source initScript;
+
+    private static String readInitScript() throws IOException {
+        return Util.readStringFromInputStream( MongoConnection.class.getResourceAsStream("init.js"));
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        Thread.currentThread().setContextClassLoader( Context.class.getClassLoader());
+        initScript = Source.newBuilder("js", readInitScript(), "init.js").build();
+        ownEngineContext = Context.newBuilder("js").allowAllAccess( true ).build();
+        sharedEngineContext = newSharedEngineContext();
+        scriptCache = new ScriptCache( ScriptCache.DEFAULT_SIZE );
+    }
+
+    @TearDown
+    public void tearDown(){
+        ownEngineContext.close();
+        sharedEngineContext.close();
+    }
+
+    private Context newSharedEngineContext(){
+        final Context context = Context.newBuilder("js").engine( JdbcDriver.getEngine() ).allowAllAccess( true ).build();
+        context.eval( initScript );
+        return context;
+    }
+
+    @Benchmark
+    public String statementBefore() throws IOException {
+        ownEngineContext.eval("js", readInitScript());
+        return ownEngineContext.eval("js", STATEMENT ).asString();
+    }
+
+    @Benchmark
+    public String statementAfter(){
+        return sharedEngineContext.eval( scriptCache.getSource( STATEMENT )).asString();
+    }
+
+    // A NEW CONNECTION RUNNING ITS FIRST STATEMENT
+    @Benchmark
+    public String connectionBefore() throws IOException {
+        try ( Context context = Context.newBuilder("js").allowAllAccess( true ).build() ){
+            context.eval("js", readInitScript());
+            return context.eval("js", STATEMENT ).asString();
+        }
+    }
+
+    @Benchmark
+    public String connectionAfter(){
+        try ( Context context = newSharedEngineContext() ){
+            return context.eval( scriptCache.getSource( STATEMENT )).asString();
+        }
+    }
+}
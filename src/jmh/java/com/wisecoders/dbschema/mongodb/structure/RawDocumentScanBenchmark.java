@@ -0,0 +1,81 @@
+package com.wisecoders.dbschema.mongodb.structure;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning deep documents read as RawBsonDocument: decoded into Document and scanned with scanDocument() as before,
+ * or walked with a BsonReader by scanRawDocument() as now. Each document has another key, so no document is skipped
+ * as a known shape. Run with: ./gradlew jmh -Pbenchmark=RawDocumentScanBenchmark
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class RawDocumentScanBenchmark {
+
+    private static final int DOCUMENT_COUNT = 100;
+
+    @Param({ "3", "10" })
+    public int depth;
+
+    private final List<RawBsonDocument> documents = new ArrayList<>();
+    private final DocumentCodec codec = new DocumentCodec();
+
+    private Document createLevel( int level ){
+        final Document document = new Document("name", "level" + level )
+                .append("count", level )
+                .append("created", new Date())
+                .append("text", String.join("", Collections.nCopies( 200, "lorem ipsum " )))
+                .append("payload", new Binary( new byte[4096] ))
+                .append("tags", Arrays.asList("a", "b", "c"))
+                .append("items", Arrays.asList( new Document("sku", "A1").append("qty", 1 ), new Document("sku", "B2").append("qty", 2 )));
+        if ( level < depth ){
+            document.append("child", createLevel( level + 1 ));
+        }
+        return document;
+    }
+
+    @Setup
+    public void setup(){
+        documents.clear();
+        for ( int i = 0; i < DOCUMENT_COUNT; i++ ){
+            final Document document = new Document("_id", new ObjectId()).append("key" + i, i ).append("root", createLevel( 0 ));
+            documents.add( new RawBsonDocument( document, codec ));
+        }
+    }
+
+    @Benchmark
+    public MetaCollection decodeAndScanDocumentBefore(){
+        final MetaCollection collection = new MetaCollection( new MetaDatabase("db"), "events", true );
+        for ( RawBsonDocument document : documents ){
+            collection.scanDocument( document.decode( codec ), false, 0 );
+        }
+        return collection;
+    }
+
+    @Benchmark
+    public MetaCollection scanRawDocumentAfter(){
+        final MetaCollection collection = new MetaCollection( new MetaDatabase("db"), "events", true );
+        for ( RawBsonDocument document : documents ){
+            collection.scanRawDocument( document, false );
+        }
+        return collection;
+    }
+}
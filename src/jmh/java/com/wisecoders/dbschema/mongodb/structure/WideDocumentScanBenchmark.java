@@ -0,0 +1,72 @@
+package com.wisecoders.dbschema.mongodb.structure;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning one wide document into a new collection, with and without sorting the fields.
+ * The 'before' benchmark repeats what MetaObject did for each key before the field index: a linear search by name and,
+ * with sort=true, sorting all fields after each new field. Run with: ./gradlew jmh -Pbenchmark=WideDocumentScanBenchmark
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class WideDocumentScanBenchmark {
+
+    @Param({ "500", "5000" })
+    public int fieldCount;
+
+    @Param({ "false", "true" })
+    public boolean sortFields;
+
+    private Document document;
+
+    @Setup
+    public void setup(){
+        document = new Document("_id", new ObjectId());
+        // REVERSE ORDER, SO THE SORT HAS WORK TO DO
+        for ( int i = fieldCount - 1; i >= 0; i-- ){
+            document.append( String.format("f%05d", i ), i );
+        }
+    }
+
+    @Benchmark
+    public List<MetaField> lookupAndSortBefore(){
+        final MetaCollection collection = new MetaCollection( new MetaDatabase("db"), "events", true );
+        final List<MetaField> fields = new ArrayList<>();
+        for ( String key : document.keySet() ){
+            MetaField found = null;
+            for ( MetaField field : fields ){
+                if ( field.name.equals( key )){
+                    found = field;
+                    break;
+                }
+            }
+            if ( found == null ){
+                fields.add( new MetaField( collection, key ));
+                if ( sortFields ){
+                    fields.sort( MetaObject.FIELDS_COMPARATOR );
+                }
+            }
+        }
+        return fields;
+    }
+
+    @Benchmark
+    public MetaCollection scanDocumentAfter(){
+        final MetaCollection collection = new MetaCollection( new MetaDatabase("db"), "events", true );
+        collection.scanChangedDocument( document, sortFields );
+        return collection;
+    }
+}
@@ -2,6 +2,10 @@
 package com.wisecoders.dbschema.mongodb;
 
 import com.wisecoders.dbschema.mongodb.wrappers.WrappedMongoClient;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
@@ -33,6 +37,10 @@ public class JdbcDriver implements Driver
 
     public static final Logger LOGGER = Logger.getLogger( JdbcDriver.class.getName() );
 
+    private static Engine engine;
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
     static {
         try {
             final Path logsDirectory = Path.of(System.getProperty("user.home"), ".DbSchema", "logs");
@@ -72,8 +80,11 @@ public class JdbcDriver implements Driver
             }
             LOGGER.info("Connect URL: " + url );
             int idx;
-            ScanStrategy scan = ScanStrategy.fast;
-            boolean expand = false, sortFields = false;
+            final ScanOptions.Builder scanOptions = ScanOptions.builder();
+            boolean expand = false;
+            int scriptCacheSize = ScriptCache.DEFAULT_SIZE;
+            int batchSize = DEFAULT_BATCH_SIZE;
+            int discoveryThreads = 1;
             String trustStore = null, trustStorePassword = null;
             String newUrl = url, urlWithoutParams = url;
             if ( ( idx = url.indexOf("?")) > 0 ){
@@ -85,11 +96,49 @@ public class JdbcDriver implements Driver
                     String key = pairArr.length == 2 ? pairArr[0].toLowerCase() : "";
                     String value = pairArr.length == 2 ? pairArr[1] : "";
                     switch( key ){
-                        case "scan": try { scan = ScanStrategy.valueOf( value);} catch ( IllegalArgumentException ignore ){}
-                            LOGGER.info("ScanStrategy=" + scan);
+                        case "scan": try { scanOptions.strategy( ScanStrategy.valueOf( value));} catch ( IllegalArgumentException ignore ){}
+                            LOGGER.info("ScanStrategy=" + value);
+                            break;
+                        case "samplesize": try { scanOptions.sampleSize( Long.parseLong( value )); } catch ( NumberFormatException ignore ){}
+                            LOGGER.info("SampleSize=" + value);
+                            break;
+                        case "arraysample": try { scanOptions.arraySampleSize( Integer.parseInt( value )); } catch ( NumberFormatException ignore ){}
+                            LOGGER.info("ArraySample=" + value);
+                            break;
+                        case "convergence": try { scanOptions.convergenceCount( Long.parseLong( value )); } catch ( NumberFormatException ignore ){}
+                            LOGGER.info("Convergence=" + value);
+                            break;
+                        case "scantime": try { scanOptions.scanTimeMs( Long.parseLong( value ) * 1000 ); } catch ( NumberFormatException ignore ){}
+                            LOGGER.info("ScanTime=" + value + "s");
+                            break;
+                        case "buckets": try { scanOptions.bucketCount( Integer.parseInt( value )); } catch ( NumberFormatException ignore ){}
+                            LOGGER.info("Buckets=" + value);
+                            break;
+                        case "sharedschema": scanOptions.sharedSchema( Boolean.parseBoolean( value)); break;
+                        case "schemattl": try { scanOptions.schemaTtlMs( Long.parseLong( value ) * 1000 ); } catch ( NumberFormatException ignore ){}
+                            LOGGER.info("SchemaTtl=" + value + "s");
+                            break;
+                        case "validators": scanOptions.strictValidators( "strict".equalsIgnoreCase( value )); break;
+                        case "validatorsample": try { scanOptions.validatorSampleSize( Integer.parseInt( value )); } catch ( NumberFormatException ignore ){}
+                            LOGGER.info("ValidatorSample=" + value);
                             break;
                         case "expand": expand = Boolean.parseBoolean( value); break;
-                        case "sort": sortFields = Boolean.parseBoolean( value); break;
+                        case "sort": scanOptions.sortFields( Boolean.parseBoolean( value)); break;
+                        case "skipknownshapes": scanOptions.skipKnownShapes( Boolean.parseBoolean( value)); break;
+                        case "serverscan": scanOptions.serverScan( Boolean.parseBoolean( value)); break;
+                        case "watch": scanOptions.watch( Boolean.parseBoolean( value)); break;
+                        case "schemacache": scanOptions.schemaCacheDirectory( URLDecoder.decode( value, StandardCharsets.UTF_8 ));
+                            LOGGER.info("SchemaCache=" + value );
+                            break;
+                        case "scriptcache": try { scriptCacheSize = Integer.parseInt( value ); } catch ( NumberFormatException ignore ){}
+                            LOGGER.info("ScriptCache=" + scriptCacheSize);
+                            break;
+                        case "batchsize": try { batchSize = Integer.parseInt( value ); } catch ( NumberFormatException ignore ){}
+                            LOGGER.info("BatchSize=" + batchSize);
+                            break;
+                        case "discoverythreads": try { discoveryThreads = Integer.parseInt( value ); } catch ( NumberFormatException ignore ){}
+                            LOGGER.info("DiscoveryThreads=" + discoveryThreads);
+                            break;
                         case "truststore": trustStore = value; break;
                         case "truststorepassword": trustStorePassword = value; break;
                         default:
@@ -115,13 +164,27 @@ public class JdbcDriver implements Driver
             }
 
             LOGGER.info("MongoClient URL: " + url + " rewritten as " + newUrl );
-            final WrappedMongoClient client = new WrappedMongoClient(newUrl, info, databaseName, scan, expand, sortFields );
+            final WrappedMongoClient client = new WrappedMongoClient(newUrl, info, databaseName, scanOptions.build(), expand, scriptCacheSize, batchSize, discoveryThreads );
             return new MongoConnection(client);
         }
         return null;
     }
 
 
+    /**
+     * The GraalJS engine is shared by all connections, so the compiled code of init.js and of the executed statements
+     * can be reused by each new Context. The engine is created at the first script execution.
+     */
+    public static synchronized Engine getEngine(){
+        if ( engine == null ){
+            // Without this it doesn't find the JS or Truffle
+            Thread.currentThread().setContextClassLoader( Context.class.getClassLoader());
+            engine = Engine.newBuilder().option("engine.WarnInterpreterOnly", "false").build();
+        }
+        return engine;
+    }
+
+
     /**
      * URLs accepted are of the form: jdbc:mongodb[+srv]://&lt;server&gt;[:27017]/&lt;db-name&gt;
      *
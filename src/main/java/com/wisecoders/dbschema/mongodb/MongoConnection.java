@@ -3,12 +3,22 @@ package com.wisecoders.dbschema.mongodb;
 import com.wisecoders.dbschema.mongodb.wrappers.WrappedMongoClient;
 import com.wisecoders.dbschema.mongodb.wrappers.WrappedMongoDatabase;
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
 
+import java.io.IOException;
 import java.sql.*;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+import static com.wisecoders.dbschema.mongodb.JdbcDriver.LOGGER;
 
 /**
  * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
@@ -20,10 +30,12 @@ public class MongoConnection implements Connection
 	final WrappedMongoClient client;
 	private boolean isClosed = false;
 	private boolean isReadOnly = false;
+	private final ScriptCache scriptCache;
 
 
 	MongoConnection(WrappedMongoClient client) throws SQLException {
 		this.client = client;
+		this.scriptCache = new ScriptCache( client.scriptCacheSize );
         setCatalog( client.getCurrentDatabaseName() );
 
 		try {
@@ -37,6 +49,15 @@ public class MongoConnection implements Connection
         return catalog;
     }
 
+	/**
+	 * Forget the deduced structure of a collection, or of all collections in the catalog if collectionName is null,
+	 * so the next DatabaseMetaData call scans them again. With sharedSchema=true this applies to all connections.
+	 */
+	public void refreshSchema( String catalog, String collectionName ) throws SQLException {
+		checkClosed();
+		client.getDatabase( catalog != null ? catalog : this.catalog ).refreshSchema( collectionName );
+	}
+
     @Override
 	public <T> T unwrap(Class<T> iface) throws SQLException	{
 		checkClosed();
@@ -121,6 +142,12 @@ public class MongoConnection implements Connection
 
     @Override
 	public void close() {
+		LOGGER.info( scriptCache.toString() );
+		final Context context = this.context;
+		if ( context != null ){
+			this.context = null;
+			context.close( true );
+		}
     	client.close();
 		isClosed = true;
 	}
@@ -402,17 +429,108 @@ public class MongoConnection implements Connection
         return 0;  
     }
 
-	private Context context;
+	public ScriptCache getScriptCache(){
+		return scriptCache;
+	}
+
+	private static Source initScript;
 
-	public Context createContext(){
+	private static synchronized Source getInitScript() throws IOException {
+		if ( initScript == null ){
+			final String script = Util.readStringFromInputStream(MongoConnection.class.getResourceAsStream("init.js"));
+			initScript = Source.newBuilder("js", script, "init.js").build();
+		}
+		return initScript;
+	}
+
+	// VOLATILE, AS Statement.cancel() MAY INTERRUPT IT FROM ANOTHER THREAD
+	private volatile Context context;
+	// THE STATEMENT WHOSE SCRIPT IS EVALUATED, GUARDED BY evaluationLock
+	private Object evaluatingStatement;
+	private final Object evaluationLock = new Object();
+	// THE DATABASES BOUND IN THE CONTEXT
+	private final Set<String> boundDatabases = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The context is created once per connection, on the shared engine. The client, the init.js functions and the
+	 * databases listed on the server are bound only at creation. For each statement we bind only the databases created
+	 * since the previous statement, and rebind 'db' to the current catalog, without listing the databases again.
+	 */
+	public Context createContext() throws IOException {
 		// System.setProperty("polyglot.engine.WarnInterpreterOnly", "false");
 		// Without this it doesn't find the JS or Truffle
 		Thread.currentThread().setContextClassLoader( Context.class.getClassLoader());
 		//https://github.com/oracle/graaljs/issues/214
+		Context context = this.context;
 		if ( context == null ) {
-			context = Context.newBuilder("js").allowAllAccess(true).build();
+			context = Context.newBuilder("js").engine(JdbcDriver.getEngine()).allowAllAccess(true).build();
+			boundDatabases.clear();
+			context.getBindings("js").putMember("client", this);
+			context.eval(getInitScript());
+			bindDatabases( context, client.getDatabaseNames() );
+			this.context = context;
 		}
+		bindDatabases( context, WrappedMongoClient.createdDatabases );
+		bindCurrentDatabase( context );
 		return context;
 	}
 
+	/**
+	 * Evaluate the script of the given statement, so cancelEvaluation() knows which statement is running.
+	 */
+	Value evaluate( Object statement, Context context, Source source ){
+		synchronized ( evaluationLock ){
+			evaluatingStatement = statement;
+		}
+		try {
+			return context.eval( source );
+		} finally {
+			synchronized ( evaluationLock ){
+				if ( evaluatingStatement == statement ){
+					evaluatingStatement = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Interrupt the JavaScript evaluation if it belongs to the given statement. The context is not closed,
+	 * so the bindings stay and the other statements of the connection are not affected.
+	 */
+	void cancelEvaluation( Object statement ){
+		synchronized ( evaluationLock ){
+			final Context context = this.context;
+			if ( context != null && evaluatingStatement == statement ){
+				LOGGER.info("Cancel JavaScript evaluation");
+				try {
+					context.interrupt( Duration.ofSeconds( 10 ));
+				} catch ( TimeoutException ex ){
+					LOGGER.log( Level.WARNING, "JavaScript evaluation was not interrupted in time", ex );
+				}
+			}
+		}
+	}
+
+	private void bindDatabases( Context context, List<String> names ){
+		final Value bindings = context.getBindings("js");
+		for ( String name : names ){
+			if ( boundDatabases.add( name )){
+				bindings.putMember( name, getDatabase( name ));
+			}
+		}
+	}
+
+	private void bindCurrentDatabase( Context context ){
+		final Value bindings = context.getBindings("js");
+		if ( catalog != null ){
+			final WrappedMongoDatabase db = getDatabase( catalog );
+			if ( boundDatabases.add( catalog )){
+				bindings.putMember(catalog, db );
+			}
+			bindings.putMember("db", db );
+		} else {
+			bindings.putMember("db", getDatabase("admin"));
+		}
+	}
+
 }
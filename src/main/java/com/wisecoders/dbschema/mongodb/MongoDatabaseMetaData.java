@@ -108,6 +108,8 @@ public class MongoDatabaseMetaData implements DatabaseMetaData
 
         if (tableNamePattern == null) {
             tableNames.addAll(con.client.getCollectionNames(catalogName));
+            // SCAN THE COLLECTIONS IN PARALLEL, THE COLUMNS ARE EXPORTED BELOW IN THE SAME ORDER AS BEFORE
+            con.client.getDatabase(catalogName).discoverMetaCollections(tableNames, con.client.discoveryThreads);
         } else {
             tableNames.add(tableNamePattern);
         }
@@ -128,7 +130,7 @@ public class MongoDatabaseMetaData implements DatabaseMetaData
 
             LOGGER.info( "Export Collection '" + tableName + "' fields");
             if (collection != null) {
-                for (MetaField field : collection.fields) {
+                for (MetaField field : collection.getFields()) {
                     if (columnNamePattern == null || columnNamePattern.equals(field.name)) {
                         exportColumnsRecursive(collection, result, field);
                     }
@@ -167,7 +169,7 @@ public class MongoDatabaseMetaData implements DatabaseMetaData
         });
         if( field instanceof MetaObject){
             MetaObject json = (MetaObject)field;
-            for ( MetaField children : json.fields){
+            for ( MetaField children : json.getFields()){
                 exportColumnsRecursive( collection, result,  children );
             }
         }
@@ -1265,7 +1267,7 @@ public class MongoDatabaseMetaData implements DatabaseMetaData
         MetaCollection pkCollection = db.getMetaCollection(tableNamePattern);
         if ( pkCollection != null ){
                 for (MetaCollection fromCollection : db.metaDatabase.getMetaCollections() ) {
-                    for (MetaField fromFiled : fromCollection.fields) {
+                    for (MetaField fromFiled : fromCollection.getFields()) {
                         getExportedKeysRecursive(result, pkCollection, fromCollection, fromFiled);
                     }
                 }
@@ -1296,7 +1298,7 @@ public class MongoDatabaseMetaData implements DatabaseMetaData
             }
         }
         if ( fromFiled instanceof MetaObject){
-            for ( MetaField field : ((MetaObject) fromFiled).fields ){
+            for ( MetaField field : ((MetaObject) fromFiled).getFields() ){
                 getExportedKeysRecursive(result, pkCollection, fromCollection, field);
             }
         }
@@ -1317,7 +1319,7 @@ public class MongoDatabaseMetaData implements DatabaseMetaData
         MetaCollection fromCollection = db.getMetaCollection( tableNamePattern);
         db.metaDatabase.discoverReferences( db );
         if ( fromCollection != null ){
-            for ( MetaField fromFiled : fromCollection.fields ){
+            for ( MetaField fromFiled : fromCollection.getFields() ){
                 getImportedKeysRecursive(result, fromFiled);
             }
         }
@@ -1345,7 +1347,7 @@ public class MongoDatabaseMetaData implements DatabaseMetaData
             });
         }
         if ( fromFiled instanceof MetaObject){
-            for ( MetaField field : ((MetaObject) fromFiled).fields ){
+            for ( MetaField field : ((MetaObject) fromFiled).getFields() ){
                 getImportedKeysRecursive(result, field);
             }
         }
@@ -1,16 +1,26 @@
 
 package com.wisecoders.dbschema.mongodb;
 
-import com.mongodb.client.AggregateIterable;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
 import com.wisecoders.dbschema.mongodb.resultSet.ArrayResultSet;
 import com.wisecoders.dbschema.mongodb.resultSet.ObjectAsResultSet;
 import com.wisecoders.dbschema.mongodb.resultSet.OkResultSet;
 import com.wisecoders.dbschema.mongodb.resultSet.ResultSetIterator;
+import com.wisecoders.dbschema.mongodb.wrappers.WrappedAggregateIterable;
+import com.wisecoders.dbschema.mongodb.wrappers.WrappedFindIterable;
 import com.wisecoders.dbschema.mongodb.wrappers.WrappedMongoClient;
 import com.wisecoders.dbschema.mongodb.wrappers.WrappedMongoCollection;
 import com.wisecoders.dbschema.mongodb.wrappers.WrappedMongoDatabase;
 import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.Decimal128;
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Value;
 
@@ -19,9 +29,13 @@ import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -36,19 +50,31 @@ import static com.wisecoders.dbschema.mongodb.JdbcDriver.LOGGER;
 public class MongoPreparedStatement implements PreparedStatement {
 
     private final MongoConnection connection;
-    private ResultSet lastResultSet;
+    private volatile ResultSet lastResultSet;
     private boolean isClosed = false;
-    private int maxRows = -1;
+    private int maxRows = 0, fetchSize = 0, queryTimeout = 0;
+    // THE CURSOR OF THE RUNNING QUERY, SO cancel() CAN CLOSE IT WHILE THE FIRST ROWS ARE READ
+    private volatile AutoCloseable cursor;
+    private volatile boolean isCancelled = false;
     private final String query;
+    private final ParameterizedQuery parameterizedQuery;
+    private final Object[] parameters;
+    private final boolean[] parametersSet;
 
     MongoPreparedStatement(final MongoConnection connection) {
         this.connection = connection;
         this.query = null;
+        this.parameterizedQuery = null;
+        this.parameters = null;
+        this.parametersSet = null;
     }
 
     MongoPreparedStatement(final MongoConnection connection, String query) {
         this.connection = connection;
         this.query = query;
+        this.parameterizedQuery = ParameterizedQuery.parse( query );
+        this.parameters = parameterizedQuery != null ? new Object[parameterizedQuery.parameterCount] : null;
+        this.parametersSet = parameterizedQuery != null ? new boolean[parameterizedQuery.parameterCount] : null;
     }
 
     @Override
@@ -95,14 +121,14 @@ public class MongoPreparedStatement implements PreparedStatement {
             }
             connection.setCatalog( db );
             connection.getDatabase(db);
-            WrappedMongoClient.createdDatabases.add(db);
+            WrappedMongoClient.createdDatabases.addIfAbsent(db);
             return new OkResultSet();
         }
         Matcher matcherCreateDatabase = PATTERN_CREATE_DATABASE.matcher( plainQuery );
         if ( matcherCreateDatabase.matches() ){
             final String dbName = matcherCreateDatabase.group(1);
             connection.getDatabase(dbName);
-            WrappedMongoClient.createdDatabases.add(dbName);
+            WrappedMongoClient.createdDatabases.addIfAbsent(dbName);
             return new OkResultSet();
         }
         if ( query.toLowerCase().startsWith("show ")){
@@ -128,47 +154,148 @@ public class MongoPreparedStatement implements PreparedStatement {
                 throw new SQLException("Invalid command : " + plainQuery);
             }
         }
+        return lastResultSet = execute( query, ShellQuery.parse( plainQuery ), query, null );
+    }
+
+    private ResultSet executeParameterized() throws SQLException {
+        checkClosed();
+        checkParametersSet();
+        return executeParameterized( parameters );
+    }
+
+    /**
+     * Execute with the given parameter values, which may be the values saved by addBatch().
+     */
+    private ResultSet executeParameterized( Object[] values ) throws SQLException {
+        checkClosed();
+        LOGGER.log(Level.INFO, "Execute " + query );
+        if (lastResultSet != null ) {
+            lastResultSet.close();
+        }
+        ShellQuery shellQuery = null;
         try {
-            final Context context = connection.createContext();
-            boolean dbIsSet = false;
-            Value bindings = context.getBindings("js");
-            for ( WrappedMongoDatabase db : connection.getDatabases() ){
-                bindings.putMember(db.getName(), db );
-                if ( connection.getCatalog() != null && connection.getCatalog().equals(db.getName())){
-                    bindings.putMember("db", db);
-                    dbIsSet = true;
+            shellQuery = parameterizedQuery.bindNative( values );
+        } catch ( Throwable ex ){
+            LOGGER.log(Level.FINE, "Statement cannot be executed natively, using JavaScript: " + query, ex );
+        }
+        return lastResultSet = execute( query, shellQuery, parameterizedQuery.script, values );
+    }
+
+    private void checkParametersSet() throws SQLException {
+        for ( int i = 0; i < parametersSet.length; i++ ){
+            if ( !parametersSet[i] ){
+                throw new SQLException("Parameter " + ( i + 1 ) + " is not set.");
+            }
+        }
+    }
+
+    // THE PARAMETER VALUES ARE NULL FOR STATEMENTS WITHOUT '?' PARAMETERS
+    private ResultSet execute( String query, ShellQuery shellQuery, String script, Object[] values ) throws SQLException {
+        isCancelled = false;
+        cursor = null;
+        try {
+            if ( shellQuery != null && shellQuery.isRead() ){
+                final WrappedMongoDatabase db = getShellQueryDatabase( shellQuery.databaseName );
+                if ( db != null ){
+                    return toResultSet( shellQuery.execute( db.getCollection( shellQuery.collectionName ), getMaxTimeMS() ));
                 }
             }
-            if ( !dbIsSet ){
-                bindings.putMember("db", connection.getDatabase("admin"));
+            final Context context = connection.createContext();
+            if ( values != null ){
+                parameterizedQuery.bindScript( context.getBindings("js"), values );
             }
-            bindings.putMember("client", connection);
-            final String initScript = Util.readStringFromInputStream(MongoPreparedStatement.class.getResourceAsStream("init.js"));
-            context.eval("js", initScript);
-
-            Value value = context.eval( "js", query );
+            final Value value = connection.evaluate( this, context, connection.getScriptCache().getSource( script ) );
             Object obj = value;
             if ( value.isHostObject() ) {
                 obj = value.asHostObject();
             }
-            if (obj instanceof AggregateIterable) {
-                lastResultSet = new ResultSetIterator(((AggregateIterable) obj).allowDiskUse(true).iterator(), connection.client.expandResultSet);
-            } else if (obj instanceof Iterable) {
-                lastResultSet = new ResultSetIterator(((Iterable) obj).iterator(), connection.client.expandResultSet);
-            } else if (obj instanceof Iterator) {
-                lastResultSet = new ResultSetIterator((Iterator) obj, connection.client.expandResultSet);
-            } else if (obj instanceof WrappedMongoCollection) {
-                lastResultSet = new ResultSetIterator(((WrappedMongoCollection) obj).find(), connection.client.expandResultSet);
-            } else if (obj != null) {
-                lastResultSet = new ObjectAsResultSet(obj);
-            }
-            return lastResultSet;
+            return toResultSet( obj );
         } catch ( Throwable ex ){
             LOGGER.log(Level.SEVERE, "Error executing: " + query, ex );
             throw new SQLException( ex.getMessage(), ex );
         }
     }
 
+    /**
+     * The native statements are recognized only on 'db' or on the current catalog name, the only ones known without listing the databases.
+     */
+    private WrappedMongoDatabase getShellQueryDatabase( String name ){
+        final String catalog = connection.getCatalog();
+        if ( "db".equals( name )){
+            return connection.getDatabase( catalog != null ? catalog : "admin" );
+        } else if ( name.equals( catalog )){
+            return connection.getDatabase( catalog );
+        }
+        return null;
+    }
+
+    /**
+     * The fetch size is used as cursor batch size. The max rows is used as find() limit or as aggregation $limit stage,
+     * and is applied while iterating for other results. The query timeout is set as maxTime, unless the query sets one itself.
+     */
+    private ResultSet toResultSet( Object obj ) throws SQLException {
+        if (obj instanceof WrappedMongoCollection) {
+            obj = ((WrappedMongoCollection) obj).find();
+        }
+        if (obj instanceof WrappedFindIterable) {
+            final WrappedFindIterable findIterable = (WrappedFindIterable) obj;
+            if ( maxRows > 0 && ( findIterable.getLimit() == 0 || Math.abs( findIterable.getLimit() ) > maxRows )) {
+                findIterable.limit( maxRows );
+            }
+            if ( fetchSize > 0 ) {
+                findIterable.batchSize( fetchSize );
+            }
+            if ( queryTimeout > 0 && findIterable.getMaxTimeMS() == 0 ) {
+                findIterable.maxTime( getMaxTimeMS(), TimeUnit.MILLISECONDS );
+            }
+        } else if (obj instanceof WrappedAggregateIterable) {
+            final WrappedAggregateIterable aggregateIterable = ((WrappedAggregateIterable) obj).allowDiskUse(true);
+            if ( maxRows > 0 && ( aggregateIterable.getLimit() == 0 || aggregateIterable.getLimit() > maxRows )) {
+                aggregateIterable.limit( maxRows );
+            }
+            if ( fetchSize > 0 ) {
+                aggregateIterable.batchSize( fetchSize );
+            }
+            if ( queryTimeout > 0 && aggregateIterable.getMaxTimeMS() == 0 ) {
+                aggregateIterable.maxTime( getMaxTimeMS(), TimeUnit.MILLISECONDS );
+            }
+        }
+        if (obj instanceof Iterable) {
+            return toResultSet( ((Iterable) obj).iterator() );
+        } else if (obj instanceof Iterator) {
+            return toResultSet( (Iterator) obj );
+        } else if (obj != null) {
+            return new ObjectAsResultSet(obj);
+        }
+        return null;
+    }
+
+    /**
+     * The server cursor is created with the first batch, so a cancel() during that round trip closes it as soon as it is received.
+     * The cursor is kept before the ResultSetIterator reads ahead the next batches.
+     */
+    private ResultSet toResultSet( Iterator iterator ) throws SQLException {
+        if ( iterator instanceof AutoCloseable ){
+            cursor = (AutoCloseable)iterator;
+            if ( isCancelled ){
+                closeCursor();
+                throw new SQLException("Statement was cancelled.");
+            }
+        }
+        return new ResultSetIterator( iterator, connection.client.expandResultSet, maxRows );
+    }
+
+    private void closeCursor(){
+        final AutoCloseable cursor = this.cursor;
+        if ( cursor != null ){
+            try {
+                cursor.close();
+            } catch ( Exception ex ){
+                LOGGER.log(Level.FINE, "Error closing the cursor", ex );
+            }
+        }
+    }
+
     public StringBuilder debug( Document doc, String prefix, StringBuilder out ){
         for ( String key : doc.keySet() ){
             Object value = doc.get( key );
@@ -201,9 +328,41 @@ public class MongoPreparedStatement implements PreparedStatement {
 
     private Document documentParam;
 
+    /**
+     * Store a parameter value, converted to the value type stored by BSON.
+     * Statements without '?' parameters ignore the values, as the driver always did.
+     */
+    private void setParameter( int parameterIndex, Object x ) throws SQLException {
+        checkClosed();
+        if ( parameterizedQuery == null ){
+            LOGGER.log(Level.FINE, "Parameter " + parameterIndex + " ignored, the statement has no '?' parameters: " + query );
+            return;
+        }
+        if ( parameterIndex < 1 || parameterIndex > parameters.length ){
+            throw new SQLException("Parameter index " + parameterIndex + " out of range 1.." + parameters.length );
+        }
+        if ( x instanceof java.util.Date ){
+            x = new java.util.Date( ((java.util.Date)x).getTime() );
+        } else if ( x instanceof BigDecimal ){
+            x = new Decimal128( (BigDecimal)x );
+        } else if ( x instanceof byte[] ){
+            x = new Binary( (byte[])x );
+        } else if ( x instanceof Float ){
+            x = ((Float)x).doubleValue();
+        } else if ( x instanceof Short || x instanceof Byte ){
+            x = ((Number)x).intValue();
+        } else if ( x instanceof Map && !( x instanceof Document )){
+            x = new Document( (Map)x );
+        }
+        parameters[parameterIndex-1] = x;
+        parametersSet[parameterIndex-1] = true;
+    }
+
     @Override
     public void setObject(int parameterIndex, Object x) throws SQLException {
-        if ( x instanceof Document ){
+        if ( parameterizedQuery != null ){
+            setParameter( parameterIndex, x );
+        } else if ( x instanceof Document ){
             documentParam = (Document)x;
         } else if ( x instanceof Map ){
             documentParam = new Document( (Map)x);
@@ -216,6 +375,10 @@ public class MongoPreparedStatement implements PreparedStatement {
 
     @Override
     public int executeUpdate() throws SQLException {
+        if ( parameterizedQuery != null ){
+            executeParameterized();
+            return 1;
+        }
         return executeUpdate(query);
     }
 
@@ -324,8 +487,11 @@ public class MongoPreparedStatement implements PreparedStatement {
     }
 
     @Override
-    public void setMaxRows(final int max)
+    public void setMaxRows(final int max) throws SQLException
     {
+        if ( max < 0 ){
+            throw new SQLException("Max rows cannot be negative.");
+        }
         this.maxRows = max;
     }
 
@@ -335,20 +501,39 @@ public class MongoPreparedStatement implements PreparedStatement {
     @Override
     public int getQueryTimeout() throws SQLException {
         checkClosed();
-        // throw new SQLFeatureNotSupportedException("MongoDB provides no support for query timeouts.");
-        return Integer.MAX_VALUE;
+        return queryTimeout;
     }
 
+    /**
+     * The timeout is sent to the server as maxTime on find, aggregate and count. The server aborts the operation when exceeded.
+     */
     @Override
     public void setQueryTimeout(final int seconds) throws SQLException {
         checkClosed();
-        // throw new SQLFeatureNotSupportedException("MongoDB provides no support for query timeouts.");
+        if ( seconds < 0 ){
+            throw new SQLException("Query timeout cannot be negative.");
+        }
+        this.queryTimeout = seconds;
     }
 
+    private long getMaxTimeMS(){
+        return TimeUnit.SECONDS.toMillis( queryTimeout );
+    }
+
+    /**
+     * Interrupt the JavaScript evaluation of this statement and close its cursor, which kills the server cursor.
+     * Usually called from another thread than the one executing the statement.
+     */
     @Override
     public void cancel() throws SQLException {
         checkClosed();
-        // throw new SQLFeatureNotSupportedException("MongoDB provides no support for interrupting an operation.");
+        isCancelled = true;
+        connection.cancelEvaluation( this );
+        closeCursor();
+        final ResultSet resultSet = lastResultSet;
+        if ( resultSet != null ){
+            resultSet.close();
+        }
     }
 
     @Override
@@ -394,11 +579,16 @@ public class MongoPreparedStatement implements PreparedStatement {
     }
 
     @Override
-    public void setFetchSize(final int rows) throws SQLException{}
+    public void setFetchSize(final int rows) throws SQLException{
+        if ( rows < 0 ){
+            throw new SQLException("Fetch size cannot be negative.");
+        }
+        this.fetchSize = rows;
+    }
 
     @Override
     public int getFetchSize() throws SQLException {
-        return 0;
+        return fetchSize;
     }
 
     @Override
@@ -411,18 +601,161 @@ public class MongoPreparedStatement implements PreparedStatement {
         return 0;
     }
 
+    /**
+     * Batch entries are: the SQL text for addBatch(sql), a copy of the parameters for parameterized statements
+     * which cannot be executed natively, or a BatchWrite.
+     */
+    private final List<Object> batch = new ArrayList<>();
+
+    /**
+     * A write which is sent together with the neighbour writes on the same collection in one unordered bulkWrite.
+     */
+    private static class BatchWrite {
+        final WrappedMongoCollection collection;
+        final WriteModel<Document> model;
+        final int updateCount;
+
+        BatchWrite( WrappedMongoCollection collection, WriteModel<Document> model, int updateCount ){
+            this.collection = collection;
+            this.model = model;
+            this.updateCount = updateCount;
+        }
+    }
+
     @Override
     public void addBatch(final String sql) throws SQLException{
-        executeUpdate(sql);
+        checkClosed();
+        if ( documentParam != null ){
+            batch.add( createBatchWrite( sql, new Document( documentParam )));
+        } else {
+            batch.add( sql );
+        }
     }
 
     @Override
-    public void clearBatch() throws SQLException{}
+    public void addBatch() throws SQLException {
+        checkClosed();
+        if ( parameterizedQuery != null ){
+            checkParametersSet();
+            final Object[] batchParameters = parameters.clone();
+            BatchWrite batchWrite = null;
+            try {
+                final ShellQuery shellQuery = parameterizedQuery.bindNative( batchParameters );
+                final WrappedMongoDatabase db = shellQuery != null ? getShellQueryDatabase( shellQuery.databaseName ) : null;
+                final WriteModel<Document> model = db != null ? shellQuery.toWriteModel() : null;
+                if ( model != null ){
+                    batchWrite = new BatchWrite( db.getCollection( shellQuery.collectionName ), model, 1 );
+                }
+            } catch ( Throwable ex ){
+                LOGGER.log(Level.FINE, "Statement cannot be batched natively, using JavaScript: " + query, ex );
+            }
+            batch.add( batchWrite != null ? batchWrite : batchParameters );
+        } else if ( documentParam != null ){
+            batch.add( createBatchWrite( query, new Document( documentParam )));
+        } else {
+            batch.add( query );
+        }
+    }
+
+    private BatchWrite createBatchWrite( String sql, Document document ) throws SQLException {
+        if ( sql != null ) {
+            sql = sql.trim();
+            final Object id = document.get("_id");
+            Matcher matcher = PATTERN_UPDATE.matcher( sql );
+            if ( matcher.matches() ){
+                final WrappedMongoCollection collection = getCollectionMandatory(matcher.group(1), true);
+                if ( id == null ){
+                    return new BatchWrite( collection, new InsertOneModel<>( document ), 1 );
+                }
+                return new BatchWrite( collection, new ReplaceOneModel<>( new Document("_id", id), document, new ReplaceOptions().upsert(true)), 1 );
+            }
+            matcher = PATTERN_DELETE.matcher( sql );
+            if ( matcher.matches() ){
+                final WrappedMongoCollection collection = getCollectionMandatory(matcher.group(1), false);
+                return new BatchWrite( collection, new DeleteOneModel<>( new Document("_id", id)), SUCCESS_NO_INFO );
+            }
+        }
+        throw new SQLException( ERROR_MESSAGE );
+    }
 
+    @Override
+    public void clearBatch() throws SQLException{
+        batch.clear();
+    }
+
+    /**
+     * Consecutive writes on the same collection are sent as bulkWrite calls of maximum batchSize writes. Only calls with
+     * nothing but inserts are unordered, other writes may depend on each other, like a delete after an insert with the same _id.
+     * Other statements are executed one by one and counted as SUCCESS_NO_INFO.
+     */
     @Override
     public int[] executeBatch() throws SQLException	{
         checkClosed();
-        return null;
+        final int[] counts = new int[batch.size()];
+        final List<BatchWrite> pending = new ArrayList<>();
+        int pendingStart = 0;
+        try {
+            for ( int i = 0; i < batch.size(); i++ ){
+                final Object entry = batch.get(i);
+                if ( entry instanceof BatchWrite ){
+                    final BatchWrite batchWrite = (BatchWrite)entry;
+                    if ( !pending.isEmpty() && !pending.get(0).collection.getNamespace().equals( batchWrite.collection.getNamespace())){
+                        flushBatch( pending, pendingStart, counts );
+                    }
+                    if ( pending.isEmpty() ){
+                        pendingStart = i;
+                    }
+                    pending.add( batchWrite );
+                } else {
+                    flushBatch( pending, pendingStart, counts );
+                    try {
+                        if ( entry instanceof Object[] ){
+                            executeParameterized( (Object[])entry );
+                        } else {
+                            execute( (String)entry );
+                        }
+                    } catch ( SQLException ex ){
+                        throw new BatchUpdateException( ex.getMessage(), Arrays.copyOf( counts, i ), ex );
+                    }
+                    counts[i] = SUCCESS_NO_INFO;
+                }
+            }
+            flushBatch( pending, pendingStart, counts );
+        } finally {
+            batch.clear();
+        }
+        return counts;
+    }
+
+    private void flushBatch( List<BatchWrite> pending, int start, int[] counts ) throws BatchUpdateException {
+        if ( pending.isEmpty() ) return;
+        final WrappedMongoCollection collection = pending.get(0).collection;
+        final int batchSize = Math.max( 1, connection.client.batchSize );
+        for ( int from = 0; from < pending.size(); from += batchSize ){
+            final List<BatchWrite> chunk = pending.subList( from, Math.min( pending.size(), from + batchSize ));
+            final List<WriteModel<Document>> models = new ArrayList<>();
+            boolean onlyInserts = true;
+            for ( BatchWrite batchWrite : chunk ){
+                models.add( batchWrite.model );
+                counts[start + from + models.size() - 1] = batchWrite.updateCount;
+                onlyInserts &= batchWrite.model instanceof InsertOneModel;
+            }
+            try {
+                collection.bulkWrite( models, new BulkWriteOptions().ordered( !onlyInserts ) );
+            } catch ( MongoBulkWriteException ex ){
+                if ( !onlyInserts ){
+                    // ORDERED WRITES STOP AT THE FIRST ERROR, SO ONLY THE WRITES BEFORE IT WERE EXECUTED
+                    final int executed = ex.getWriteErrors().isEmpty() ? chunk.size() : ex.getWriteErrors().get(0).getIndex();
+                    throw new BatchUpdateException( ex.getMessage(), Arrays.copyOf( counts, start + from + executed ), ex );
+                }
+                for ( BulkWriteError error : ex.getWriteErrors() ){
+                    counts[start + from + error.getIndex()] = EXECUTE_FAILED;
+                }
+                throw new BatchUpdateException( ex.getMessage(), Arrays.copyOf( counts, start + from + chunk.size() ), ex );
+            }
+        }
+        LOGGER.log(Level.INFO, "Batch wrote " + pending.size() + " documents into " + collection );
+        pending.clear();
     }
 
     @Override
@@ -521,77 +854,81 @@ public class MongoPreparedStatement implements PreparedStatement {
 
     @Override
     public ResultSet executeQuery() throws SQLException {
+        if ( parameterizedQuery != null ){
+            return executeParameterized();
+        }
         execute(query);
         return lastResultSet;
     }
 
     @Override
     public void setNull(int parameterIndex, int sqlType) throws SQLException {
-
+        setParameter( parameterIndex, null );
     }
 
     @Override
     public void setBoolean(int parameterIndex, boolean x) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setByte(int parameterIndex, byte x) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setShort(int parameterIndex, short x) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setInt(int parameterIndex, int x) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setLong(int parameterIndex, long x) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setFloat(int parameterIndex, float x) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setDouble(int parameterIndex, double x) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setString(int parameterIndex, String x) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setBytes(int parameterIndex, byte[] x) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setDate(int parameterIndex, Date x) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setTime(int parameterIndex, Time x) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        setParameter( parameterIndex, x );
     }
 
     @Override
@@ -608,22 +945,25 @@ public class MongoPreparedStatement implements PreparedStatement {
 
     @Override
     public void clearParameters() throws SQLException {
+        documentParam = null;
+        if ( parameterizedQuery != null ){
+            Arrays.fill( parameters, null );
+            Arrays.fill( parametersSet, false );
+        }
     }
 
     @Override
     public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        setObject( parameterIndex, x );
     }
 
 
     @Override
     public boolean execute() throws SQLException {
-        return false;
+        executeQuery();
+        return lastResultSet != null;
     }
 
-    @Override
-    public void addBatch() throws SQLException {
-        executeUpdate();
-    }
 
     @Override
     public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
@@ -657,22 +997,22 @@ public class MongoPreparedStatement implements PreparedStatement {
 
     @Override
     public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
-
+        setParameter( parameterIndex, x );
     }
 
     @Override
     public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
-
+        setParameter( parameterIndex, null );
     }
 
     @Override
@@ -692,7 +1032,7 @@ public class MongoPreparedStatement implements PreparedStatement {
 
     @Override
     public void setNString(int parameterIndex, String value) throws SQLException {
-
+        setParameter( parameterIndex, value );
     }
 
     @Override
@@ -727,7 +1067,7 @@ public class MongoPreparedStatement implements PreparedStatement {
 
     @Override
     public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
-
+        setObject( parameterIndex, x );
     }
 
     @Override
@@ -0,0 +1,95 @@
+package com.wisecoders.dbschema.mongodb;
+
+import org.graalvm.polyglot.Value;
+
+/**
+ * Statement with '?' placeholders, parsed once when the PreparedStatement is created.
+ * A '?' is a placeholder only in a value position: after one of ( [ { , : and before one of ) ] } ,
+ * This way JavaScript ternary operators, optional chaining and regular expressions are not touched.
+ * <ul>
+ *     <li>For the native execution the placeholders are replaced with markers { $jdbcParameter: index } and the
+ *     parameter values are bound into the parsed BSON at each execution.</li>
+ *     <li>For the JavaScript execution the placeholders are replaced with variables __jdbcParameter1, __jdbcParameter2...
+ *     The script text stays the same for each execution, so the parsed script is reused from the ScriptCache.</li>
+ * </ul>
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+class ParameterizedQuery {
+
+    private static final String VARIABLE_PREFIX = "__jdbcParameter";
+
+    final int parameterCount;
+    final String script;
+    final ShellQuery nativeTemplate;
+
+    private ParameterizedQuery( int parameterCount, String script, ShellQuery nativeTemplate ){
+        this.parameterCount = parameterCount;
+        this.script = script;
+        this.nativeTemplate = nativeTemplate;
+    }
+
+    /**
+     * Return null if the query has no placeholders.
+     */
+    static ParameterizedQuery parse( String query ){
+        if ( query == null ) return null;
+        String plainQuery = query.trim();
+        if ( plainQuery.endsWith(";")){
+            plainQuery = plainQuery.substring(0, plainQuery.length()-1);
+        }
+        final StringBuilder script = new StringBuilder();
+        final StringBuilder nativeText = new StringBuilder();
+        int count = 0;
+        char quote = 0;
+        for ( int i = 0; i < plainQuery.length(); i++ ){
+            final char c = plainQuery.charAt( i );
+            if ( quote != 0 ){
+                if ( c == '\\' && i + 1 < plainQuery.length() ){
+                    script.append( c );
+                    nativeText.append( c );
+                    i++;
+                    script.append( plainQuery.charAt( i ));
+                    nativeText.append( plainQuery.charAt( i ));
+                    continue;
+                } else if ( c == quote ) {
+                    quote = 0;
+                }
+            } else if ( c == '"' || c == '\'' || c == '`' ){
+                quote = c;
+            } else if ( c == '?' && isPlaceholder( plainQuery, i )){
+                script.append( VARIABLE_PREFIX ).append( count + 1 );
+                nativeText.append( "{\"" ).append( ShellQuery.PARAMETER_KEY ).append( "\":" ).append( count ).append( "}" );
+                count++;
+                continue;
+            }
+            script.append( c );
+            nativeText.append( c );
+        }
+        if ( count == 0 ) return null;
+        return new ParameterizedQuery( count, script.toString(), ShellQuery.parseTemplate( nativeText.toString() ));
+    }
+
+    private static boolean isPlaceholder( String query, int idx ){
+        int before = idx - 1;
+        while ( before >= 0 && Character.isWhitespace( query.charAt( before ))) before--;
+        int after = idx + 1;
+        while ( after < query.length() && Character.isWhitespace( query.charAt( after ))) after++;
+        return before >= 0 && "([{,:".indexOf( query.charAt( before )) > -1 &&
+                after < query.length() && ")]},".indexOf( query.charAt( after )) > -1;
+    }
+
+    /**
+     * The native statement with the parameter values, or null if it cannot be executed natively.
+     */
+    ShellQuery bindNative( Object[] parameters ){
+        return nativeTemplate != null ? nativeTemplate.bind( parameters ) : null;
+    }
+
+    void bindScript( Value bindings, Object[] parameters ){
+        for ( int i = 0; i < parameterCount; i++ ){
+            bindings.putMember( VARIABLE_PREFIX + ( i + 1 ), parameters[i] );
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.wisecoders.dbschema.mongodb;
+
+
+/**
+ * The URL parameters which control how collections are scanned in order to deduce their structure.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+public class ScanOptions {
+
+    public final ScanStrategy strategy;
+    public final boolean sortFields;
+    // NUMBER OF DOCUMENTS READ BY THE SAMPLE STRATEGY
+    public final long sampleSize;
+    // DEDUCE THE FIELDS USING AN AGGREGATION ON THE SERVER, WITHOUT READING THE DOCUMENTS
+    public final boolean serverScan;
+    // FOLDER WHERE THE DEDUCED STRUCTURE IS SAVED, OR NULL
+    public final String schemaCacheDirectory;
+    // UPDATE THE DISCOVERED COLLECTIONS USING CHANGE STREAMS
+    public final boolean watch;
+    // THE NUMBER OF ARRAY ELEMENTS SCANNED FROM THE START, THE MIDDLE AND THE END OF LARGE ARRAYS. 0 FOR ALL ELEMENTS
+    public final int arraySampleSize;
+    // SKIP THE DOCUMENTS WITH THE SAME KEYS AND TYPES AS AN ALREADY SCANNED DOCUMENT. ONLY THEIR ObjectIds AND ARRAY SIZES ARE READ
+    public final boolean skipKnownShapes;
+    // THE ADAPTIVE STRATEGY STOPS AFTER THIS NUMBER OF DOCUMENTS WITHOUT NEW FIELDS OR TYPES, OR AFTER THE SCAN TIME
+    public final long convergenceCount;
+    public final long scanTimeMs;
+    // NUMBER OF _id TIME RANGES READ BY THE STRATIFIED STRATEGY
+    public final int bucketCount;
+    // SHARE THE DEDUCED STRUCTURE WITH ALL CONNECTIONS TO THE SAME URI, USING THE SchemaRegistry
+    public final boolean sharedSchema;
+    // SCANNED COLLECTIONS OLDER THAN THIS ARE SCANNED AGAIN. 0 MEANS NO EXPIRATION
+    public final long schemaTtlMs;
+    // USE ONLY THE VALIDATORS WITH validationLevel strict AND additionalProperties false, SCAN THE OTHER COLLECTIONS
+    public final boolean strictValidators;
+    // NUMBER OF DOCUMENTS READ FROM THE COLLECTIONS DEFINED BY VALIDATORS, ONLY TO FIND THE ObjectId REFERENCES
+    public final int validatorSampleSize;
+
+    public static final long DEFAULT_CONVERGENCE_COUNT = 1000;
+    public static final long DEFAULT_SCAN_TIME_MS = 60000;
+    public static final int DEFAULT_BUCKET_COUNT = 10;
+
+    private ScanOptions( Builder builder ){
+        this.strategy = builder.strategy;
+        this.sortFields = builder.sortFields;
+        this.sampleSize = builder.sampleSize > 0 ? builder.sampleSize : ScanStrategy.sample.SCAN_COUNT;
+        this.serverScan = builder.serverScan;
+        this.schemaCacheDirectory = builder.schemaCacheDirectory;
+        this.watch = builder.watch;
+        this.arraySampleSize = builder.arraySampleSize;
+        this.skipKnownShapes = builder.skipKnownShapes;
+        this.convergenceCount = builder.convergenceCount > 0 ? builder.convergenceCount : DEFAULT_CONVERGENCE_COUNT;
+        this.scanTimeMs = builder.scanTimeMs > 0 ? builder.scanTimeMs : DEFAULT_SCAN_TIME_MS;
+        this.bucketCount = builder.bucketCount > 0 ? builder.bucketCount : DEFAULT_BUCKET_COUNT;
+        this.sharedSchema = builder.sharedSchema;
+        this.schemaTtlMs = builder.schemaTtlMs;
+        this.strictValidators = builder.strictValidators;
+        this.validatorSampleSize = builder.validatorSampleSize;
+    }
+
+    public static Builder builder(){
+        return new Builder();
+    }
+
+    /**
+     * Named setters, so the many numeric and boolean options cannot be swapped by position. Values not set use the defaults.
+     */
+    public static class Builder {
+
+        private ScanStrategy strategy = ScanStrategy.fast;
+        private boolean sortFields, serverScan, watch, skipKnownShapes, sharedSchema, strictValidators;
+        private long sampleSize, convergenceCount, scanTimeMs, schemaTtlMs;
+        private int arraySampleSize, bucketCount, validatorSampleSize;
+        private String schemaCacheDirectory;
+
+        private Builder(){}
+
+        public Builder strategy( ScanStrategy strategy ){ this.strategy = strategy; return this; }
+        public Builder sortFields( boolean sortFields ){ this.sortFields = sortFields; return this; }
+        public Builder sampleSize( long sampleSize ){ this.sampleSize = sampleSize; return this; }
+        public Builder serverScan( boolean serverScan ){ this.serverScan = serverScan; return this; }
+        public Builder schemaCacheDirectory( String schemaCacheDirectory ){ this.schemaCacheDirectory = schemaCacheDirectory; return this; }
+        public Builder watch( boolean watch ){ this.watch = watch; return this; }
+        public Builder arraySampleSize( int arraySampleSize ){ this.arraySampleSize = arraySampleSize; return this; }
+        public Builder skipKnownShapes( boolean skipKnownShapes ){ this.skipKnownShapes = skipKnownShapes; return this; }
+        public Builder convergenceCount( long convergenceCount ){ this.convergenceCount = convergenceCount; return this; }
+        public Builder scanTimeMs( long scanTimeMs ){ this.scanTimeMs = scanTimeMs; return this; }
+        public Builder bucketCount( int bucketCount ){ this.bucketCount = bucketCount; return this; }
+        public Builder sharedSchema( boolean sharedSchema ){ this.sharedSchema = sharedSchema; return this; }
+        public Builder schemaTtlMs( long schemaTtlMs ){ this.schemaTtlMs = schemaTtlMs; return this; }
+        public Builder strictValidators( boolean strictValidators ){ this.strictValidators = strictValidators; return this; }
+        public Builder validatorSampleSize( int validatorSampleSize ){ this.validatorSampleSize = validatorSampleSize; return this; }
+
+        public ScanOptions build(){
+            return new ScanOptions( this );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ScanOptions strategy=" + strategy + " sortFields=" + sortFields + " sampleSize=" + sampleSize + " serverScan=" + serverScan + " schemaCache=" + schemaCacheDirectory + " watch=" + watch + " arraySample=" + arraySampleSize + " skipKnownShapes=" + skipKnownShapes + " convergence=" + convergenceCount + " scanTimeMs=" + scanTimeMs + " buckets=" + bucketCount + " sharedSchema=" + sharedSchema + " schemaTtlMs=" + schemaTtlMs + " strictValidators=" + strictValidators + " validatorSample=" + validatorSampleSize;
+    }
+}
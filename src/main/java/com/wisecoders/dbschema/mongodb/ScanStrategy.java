@@ -3,6 +3,10 @@ package com.wisecoders.dbschema.mongodb;
 
 /**
  * How deep the driver should look into collections in order to deduce the collection structure ( fields, data types ).
+ * fast, medium and full read the first and the last SCAN_COUNT documents ordered by _id.
+ * sample reads random documents using the server-side $sample aggregation stage, SCAN_COUNT being the default sample size.
+ * stratified splits the _id ObjectId timestamps in buckets and reads the first documents from each bucket, so older document versions are seen as well.
+ * adaptive reads the documents ordered by _id until the structure converges, or until the scan time is over.
  *
  * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
  * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
@@ -10,7 +14,7 @@ package com.wisecoders.dbschema.mongodb;
 public enum ScanStrategy {
 
 
-    fast(100), medium(300 ), full( Long.MAX_VALUE );
+    fast(100), medium(300 ), full( Long.MAX_VALUE ), sample( 1000 ), adaptive( Long.MAX_VALUE ), stratified( 1000 );
 
     public final long SCAN_COUNT;
 
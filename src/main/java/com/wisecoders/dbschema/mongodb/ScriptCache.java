@@ -0,0 +1,68 @@
+package com.wisecoders.dbschema.mongodb;
+
+import org.graalvm.polyglot.Source;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of parsed GraalJS sources, keyed by the statement text.
+ * Evaluating the same Source object on the shared engine reuses the already parsed code,
+ * so repeated statements do not pay the JavaScript parse again.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+public class ScriptCache {
+
+    public static final int DEFAULT_SIZE = 100;
+
+    private final int maxSize;
+    private final Map<String, Source> sources;
+    private long hits = 0, misses = 0;
+
+    public ScriptCache( final int maxSize ){
+        this.maxSize = maxSize;
+        this.sources = new LinkedHashMap<>(16, 0.75f, true ){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Source> eldest) {
+                return size() > ScriptCache.this.maxSize;
+            }
+        };
+    }
+
+    public synchronized Source getSource( String script ){
+        Source source = sources.get( script );
+        if ( source != null ){
+            hits++;
+            return source;
+        }
+        misses++;
+        source = Source.create("js", script );
+        if ( maxSize > 0 ){
+            sources.put( script, source );
+        }
+        return source;
+    }
+
+    public synchronized long getHits(){
+        return hits;
+    }
+
+    public synchronized long getMisses(){
+        return misses;
+    }
+
+    public synchronized int size(){
+        return sources.size();
+    }
+
+    public synchronized void clear(){
+        sources.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ScriptCache size=" + sources.size() + "/" + maxSize + " hits=" + hits + " misses=" + misses;
+    }
+}
@@ -0,0 +1,401 @@
+package com.wisecoders.dbschema.mongodb;
+
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.wisecoders.dbschema.mongodb.wrappers.WrappedFindIterable;
+import com.wisecoders.dbschema.mongodb.wrappers.WrappedMongoCollection;
+import org.bson.Document;
+import org.bson.json.JsonParseException;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Recognizer for the most frequent shell statements, executed without creating a GraalJS context:
+ * <ul>
+ *     <li>db.coll.find(filter, projection).sort(...).skip(n).limit(n)</li>
+ *     <li>db.coll.aggregate([...])</li>
+ *     <li>db.coll.count(filter)</li>
+ * </ul>
+ * Parameterized db.coll.insertOne(document) is recognized only by bind(), so PreparedStatement batches can send it as InsertOneModel.
+ * The arguments are parsed with the BSON JSON reader, which accepts the shell syntax ( unquoted keys, single quotes, ObjectId(...) ).
+ * The values are converted to the types received from JavaScript, so both paths store and match the same BSON.
+ * Anything else, including JavaScript expressions and extended JSON inside the arguments, is not recognized and parse() returns null.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+class ShellQuery {
+
+    static class Call {
+        final String name;
+        final List<Object> args;
+
+        Call( String name, List<Object> args ){
+            this.name = name;
+            this.args = args;
+        }
+    }
+
+    // MEMBERS OF WrappedMongoDatabase WHICH ARE NOT COLLECTIONS
+    private static final Set<String> DATABASE_MEMBERS = new HashSet<>(Arrays.asList(
+            "createView", "getCollection", "createCollection", "runCommand", "drop", "listCollectionNames", "listCollections", "getViewSource", "getName"));
+    // FUNCTIONS WHICH ARE UNDERSTOOD THE SAME WAY BY init.js AND BY THE BSON JSON READER
+    private static final Set<String> ALLOWED_FUNCTIONS = new HashSet<>(Arrays.asList("ObjectId", "NumberLong", "NumberInt"));
+    // EXTENDED JSON READ BY THE BSON JSON READER AS VALUES OF THE ALLOWED TYPES. FOR JAVASCRIPT THESE ARE OBJECTS
+    private static final Pattern EXTENDED_JSON = Pattern.compile("\\$(oid|numberInt|numberLong|numberDouble)\\b");
+
+    final String databaseName;
+    final String collectionName;
+    final List<Call> calls;
+
+    private ShellQuery( String databaseName, String collectionName, List<Call> calls ){
+        this.databaseName = databaseName;
+        this.collectionName = collectionName;
+        this.calls = calls;
+    }
+
+    /**
+     * Parse a statement which can be executed natively, or return null.
+     */
+    static ShellQuery parse( String query ){
+        final ShellQuery shellQuery = parseTemplate( query );
+        return shellQuery != null && shellQuery.isRead() ? shellQuery : null;
+    }
+
+    /**
+     * Parse without validating the arguments, which may still contain parameter markers. The validation is done by bind().
+     */
+    static ShellQuery parseTemplate( String query ){
+        if ( query == null ) return null;
+        try {
+            final Parser parser = new Parser( query );
+            final String databaseName = parser.readIdentifier();
+            if ( databaseName == null || "client".equals( databaseName ) || !parser.read('.') ) return null;
+            String collectionName = parser.readIdentifier();
+            if ( collectionName == null ) return null;
+            if ( "getCollection".equals( collectionName ) && parser.read('(')){
+                final List<Object> args = parser.readArguments();
+                if ( args == null || args.size() != 1 || !( args.get(0) instanceof String )) return null;
+                collectionName = (String)args.get(0);
+            } else if ( DATABASE_MEMBERS.contains( collectionName )){
+                return null;
+            }
+            final List<Call> calls = new ArrayList<>();
+            while ( !parser.isEnd() ){
+                if ( !parser.read('.')) return null;
+                final String name = parser.readIdentifier();
+                if ( name == null || !parser.read('(')) return null;
+                final List<Object> args = parser.readArguments();
+                if ( args == null ) return null;
+                calls.add( new Call( name, args ));
+            }
+            return new ShellQuery( databaseName, collectionName, calls );
+        } catch ( JsonParseException | IllegalArgumentException ex ){
+            return null;
+        }
+    }
+
+    static final String PARAMETER_KEY = "$jdbcParameter";
+
+    /**
+     * Replace the parameter markers { $jdbcParameter: index } with the values set on the PreparedStatement.
+     * The template is not modified, so it can be bound again for the next execution.
+     */
+    ShellQuery bind( Object[] parameters ){
+        final List<Call> boundCalls = new ArrayList<>();
+        for ( Call call : calls ){
+            final List<Object> args = new ArrayList<>();
+            for ( Object arg : call.args ){
+                args.add( bindValue( arg, parameters ));
+            }
+            boundCalls.add( new Call( call.name, args ));
+        }
+        final ShellQuery shellQuery = new ShellQuery( databaseName, collectionName, boundCalls );
+        return shellQuery.isSupported() ? shellQuery : null;
+    }
+
+    private static Object bindValue( Object value, Object[] parameters ){
+        if ( value instanceof Map ){
+            final Map<?,?> map = (Map<?,?>)value;
+            if ( map.size() == 1 && map.get( PARAMETER_KEY ) instanceof Integer ){
+                return parameters[ (Integer)map.get( PARAMETER_KEY ) ];
+            }
+            final Document copy = new Document();
+            for ( Map.Entry<?,?> entry : map.entrySet() ){
+                copy.put( String.valueOf( entry.getKey() ), bindValue( entry.getValue(), parameters ));
+            }
+            return copy;
+        } else if ( value instanceof List ){
+            final List<Object> copy = new ArrayList<>();
+            for ( Object obj : (List<?>)value ){
+                copy.add( bindValue( obj, parameters ));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private boolean isSupported(){
+        return isRead() || isInsert();
+    }
+
+    /**
+     * True for find, aggregate and count, the statements executed natively by execute().
+     */
+    boolean isRead(){
+        if ( calls.isEmpty() ) return false;
+        final Call first = calls.get(0);
+        switch ( first.name ){
+            case "find":
+                if ( first.args.size() > 2 || !allArgsAreMaps( first )) return false;
+                for ( int i = 1; i < calls.size(); i++ ){
+                    final Call call = calls.get(i);
+                    switch ( call.name ){
+                        case "sort":
+                        case "projection":
+                            if ( call.args.size() != 1 || !allArgsAreMaps( call )) return false;
+                            break;
+                        case "limit":
+                        case "skip":
+                            if ( call.args.size() != 1 || !( call.args.get(0) instanceof Integer )) return false;
+                            break;
+                        case "pretty":
+                            if ( !call.args.isEmpty() ) return false;
+                            break;
+                        case "count":
+                            if ( !call.args.isEmpty() || i != calls.size() - 1 ) return false;
+                            break;
+                        default: return false;
+                    }
+                }
+                return true;
+            case "aggregate":
+                if ( calls.size() != 1 || first.args.isEmpty() ) return false;
+                return ( first.args.size() == 1 && first.args.get(0) instanceof List ) || allArgsAreMaps( first );
+            case "count":
+            case "countDocuments":
+                return calls.size() == 1 && first.args.size() <= 1 && allArgsAreMaps( first );
+            default:
+                return false;
+        }
+    }
+
+    private boolean isInsert(){
+        if ( calls.size() != 1 ) return false;
+        final Call first = calls.get(0);
+        return ( "insertOne".equals( first.name ) || "insert".equals( first.name )) && first.args.size() == 1 && allArgsAreMaps( first );
+    }
+
+    private static boolean allArgsAreMaps( Call call ){
+        for ( Object arg : call.args ){
+            if ( !( arg instanceof Map )) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Execute a read on the given collection and return the same kind of object as the JavaScript evaluation would do.
+     * The JDBC query timeout, if greater than zero, is set as maxTime on find, aggregate and count.
+     */
+    Object execute( WrappedMongoCollection collection, long maxTimeMS ){
+        final Call first = calls.get(0);
+        switch ( first.name ){
+            case "find": {
+                WrappedFindIterable iterable;
+                if ( first.args.isEmpty() ) {
+                    iterable = collection.find();
+                } else if ( first.args.size() == 1 ){
+                    iterable = collection.find( (Map)first.args.get(0) );
+                } else {
+                    iterable = collection.find( (Map)first.args.get(0), (Map)first.args.get(1) );
+                }
+                if ( maxTimeMS > 0 ){
+                    iterable = iterable.maxTime( maxTimeMS, TimeUnit.MILLISECONDS );
+                }
+                for ( int i = 1; i < calls.size(); i++ ){
+                    final Call call = calls.get(i);
+                    switch ( call.name ){
+                        case "sort": iterable = iterable.sort( (Map)call.args.get(0) ); break;
+                        case "projection": iterable = iterable.projection( (Map)call.args.get(0) ); break;
+                        case "limit": iterable = iterable.limit( (Integer)call.args.get(0) ); break;
+                        case "skip": iterable = iterable.skip( (Integer)call.args.get(0) ); break;
+                        case "count": return iterable.count();
+                        default: break;
+                    }
+                }
+                return iterable;
+            }
+            case "aggregate": {
+                final List<Object> pipeline = new ArrayList<>();
+                if ( first.args.size() == 1 && first.args.get(0) instanceof List ){
+                    pipeline.addAll( (List)first.args.get(0) );
+                } else {
+                    pipeline.addAll( first.args );
+                }
+                return maxTimeMS > 0 ?
+                        collection.aggregate( pipeline ).maxTime( maxTimeMS, TimeUnit.MILLISECONDS ) :
+                        collection.aggregate( pipeline );
+            }
+            default: {
+                final Map filter = first.args.isEmpty() ? new HashMap<>() : (Map)first.args.get(0);
+                return maxTimeMS > 0 ?
+                        collection.count( filter, new CountOptions().maxTime( maxTimeMS, TimeUnit.MILLISECONDS )) :
+                        collection.count( filter );
+            }
+        }
+    }
+
+    /**
+     * The write model used for JDBC batches, or null if the statement is not a write.
+     */
+    WriteModel<Document> toWriteModel(){
+        if ( isInsert() ){
+            return new InsertOneModel<>( new Document( GraalConvertor.convertMap( (Map)calls.get(0).args.get(0) )));
+        }
+        return null;
+    }
+
+    private static class Parser {
+
+        private final String text;
+        private int pos = 0;
+
+        Parser( String text ){
+            this.text = text;
+        }
+
+        private void skipWhitespaces(){
+            while ( pos < text.length() && Character.isWhitespace( text.charAt( pos ))) pos++;
+        }
+
+        boolean isEnd(){
+            skipWhitespaces();
+            return pos >= text.length();
+        }
+
+        boolean read( char c ){
+            skipWhitespaces();
+            if ( pos < text.length() && text.charAt( pos ) == c ){
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        String readIdentifier(){
+            skipWhitespaces();
+            final int start = pos;
+            while ( pos < text.length() && isIdentifierChar( text.charAt( pos ), pos == start )) pos++;
+            return pos > start ? text.substring( start, pos ) : null;
+        }
+
+        private static boolean isIdentifierChar( char c, boolean first ){
+            return c == '_' || c == '$' || ( first ? Character.isLetter( c ) : Character.isLetterOrDigit( c ));
+        }
+
+        /**
+         * Read the arguments until the closing bracket, splitting them by the top-level commas.
+         * Return null if the arguments contain something else than JSON.
+         */
+        List<Object> readArguments(){
+            final List<Object> args = new ArrayList<>();
+            int depth = 0, argStart = pos;
+            char quote = 0;
+            while ( pos < text.length() ){
+                final char c = text.charAt( pos );
+                if ( quote != 0 ){
+                    if ( c == '\\' ) pos++;
+                    else if ( c == quote ) quote = 0;
+                } else if ( c == '"' || c == '\'' ){
+                    quote = c;
+                } else if ( c == '/' || c == '`' ){
+                    // REGULAR EXPRESSIONS, COMMENTS OR TEMPLATES ARE LEFT TO JAVASCRIPT
+                    return null;
+                } else if ( c == '(' ){
+                    if ( depth == 0 || !ALLOWED_FUNCTIONS.contains( previousIdentifier() )) return null;
+                    depth++;
+                } else if ( c == '{' || c == '[' ){
+                    depth++;
+                } else if ( c == '}' || c == ']' ){
+                    depth--;
+                } else if ( c == ')' ){
+                    if ( depth == 0 ){
+                        if ( !addArgument( args, text.substring( argStart, pos ), false )) return null;
+                        pos++;
+                        return args;
+                    }
+                    depth--;
+                } else if ( c == ',' && depth == 0 ){
+                    if ( !addArgument( args, text.substring( argStart, pos ), true )) return null;
+                    argStart = pos + 1;
+                }
+                pos++;
+            }
+            return null;
+        }
+
+        private String previousIdentifier(){
+            int end = pos;
+            while ( end > 0 && Character.isWhitespace( text.charAt( end - 1 ))) end--;
+            int start = end;
+            while ( start > 0 && isIdentifierChar( text.charAt( start - 1 ), false )) start--;
+            return text.substring( start, end );
+        }
+
+        private static boolean addArgument( List<Object> args, String arg, boolean mandatory ){
+            arg = arg.trim();
+            if ( arg.isEmpty() ){
+                return !mandatory && args.isEmpty();
+            }
+            if ( EXTENDED_JSON.matcher( arg ).find() ){
+                return false;
+            }
+            args.add( toScriptValue( Document.parse("{\"value\":" + arg + "}").get("value")));
+            return true;
+        }
+
+        /**
+         * Convert to the value received from JavaScript: numbers are Integer, Long or Double, whichever is the smallest
+         * holding the value, as JavaScript has only one number type. Other types come only from extended JSON,
+         * which JavaScript reads as objects, so these statements are left to JavaScript.
+         */
+        private static Object toScriptValue( Object value ){
+            if ( value instanceof Map ){
+                final Document document = new Document();
+                for ( Map.Entry<?,?> entry : ((Map<?,?>)value).entrySet() ){
+                    document.put( String.valueOf( entry.getKey() ), toScriptValue( entry.getValue() ));
+                }
+                return document;
+            } else if ( value instanceof List ){
+                final List<Object> list = new ArrayList<>();
+                for ( Object obj : (List<?>)value ){
+                    list.add( toScriptValue( obj ));
+                }
+                return list;
+            } else if ( value instanceof Integer || value instanceof Long || value instanceof Double ){
+                if ( value instanceof Double ){
+                    final double number = (Double)value;
+                    // NaN, FRACTIONS, -0 AND VALUES OUTSIDE THE long RANGE STAY Double
+                    if ( number != Math.rint( number ) || ( number == 0 && 1 / number < 0 ) || number < -0x1p63 || number >= 0x1p63 ){
+                        return value;
+                    }
+                }
+                final long longValue = ((Number)value).longValue();
+                return longValue == (int)longValue ? (Object)(int)longValue : (Object)longValue;
+            } else if ( value == null || value instanceof String || value instanceof Boolean || value instanceof ObjectId ){
+                return value;
+            }
+            throw new IllegalArgumentException("Value of type " + value.getClass().getName() + " is left to JavaScript");
+        }
+    }
+}
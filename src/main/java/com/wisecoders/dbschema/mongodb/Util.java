@@ -8,6 +8,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.Date;
@@ -60,6 +62,10 @@ public class Util {
 
     private static final Pattern PATTERN_NUMBER = Pattern.compile("\\d+");
 
+    public static boolean isNumber( String str ){
+        return str != null && PATTERN_NUMBER.matcher( str ).matches();
+    }
+
     public static boolean allKeysAreNumbers( Map map ){
         if ( map.isEmpty() ) return false;
         for( Object key : map.keySet()){
@@ -78,10 +84,19 @@ public class Util {
     }
 
     public static Class getListElementsClass(Object obj){
+        return getListElementsClass( obj, 0 );
+    }
+
+    /**
+     * Same as getListElementsClass(), but considering only the elements selected by isSampledElement().
+     */
+    public static Class getListElementsClass(Object obj, int sampleSize ){
         if ( obj instanceof List){
             List list = (List)obj;
             Class cls = null;
+            int index = 0;
             for ( Object val : list ){
+                if ( !isSampledElement( index++, list.size(), sampleSize )) continue;
                 Class _cls = null;
                 if ( val instanceof Map ) _cls = Map.class;
                 else if ( val instanceof Integer ) _cls = Integer.class;
@@ -99,6 +114,19 @@ public class Util {
         return null;
     }
 
+    /**
+     * For large arrays scan only the first sampleSize elements, the last sampleSize elements and sampleSize elements
+     * at equal distance in the middle. A sampleSize of 0 means all elements.
+     */
+    public static boolean isSampledElement( int index, int size, int sampleSize ){
+        if ( sampleSize <= 0 || size <= 3 * sampleSize || index < sampleSize || index >= size - sampleSize ){
+            return true;
+        }
+        final int middle = size - 2 * sampleSize;
+        final int stride = ( middle + sampleSize - 1 ) / sampleSize;
+        return ( index - sampleSize ) % stride == 0;
+    }
+
     public static String getBsonType(Document bsonDefinition){
         Object bsonTypeObj = bsonDefinition.get("bsonType");
         if ( bsonTypeObj instanceof List){
@@ -108,6 +136,44 @@ public class Util {
         }
     }
 
+    /**
+     * True if the $jsonSchema lists all the fields, using additionalProperties:false for all objects, nested objects and array items included.
+     */
+    public static boolean isClosedJsonSchema( Document bsonDefinition ){
+        final Object properties = bsonDefinition.get("properties");
+        if ( "object".equals( getBsonType( bsonDefinition )) || properties != null ){
+            if ( !Boolean.FALSE.equals( bsonDefinition.get("additionalProperties"))){
+                return false;
+            }
+            if ( properties instanceof Document ){
+                for ( Object property : ((Document)properties).values() ){
+                    if ( property instanceof Document && !isClosedJsonSchema( (Document)property )){
+                        return false;
+                    }
+                }
+            }
+        }
+        final Object items = bsonDefinition.get("items");
+        return !( items instanceof Document ) || isClosedJsonSchema( (Document)items );
+    }
+
+    /**
+     * Hexadecimal SHA-256 hash of the text, or null if the text is null.
+     */
+    public static String sha256( String text ){
+        if ( text == null ) return null;
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256").digest( text.getBytes( StandardCharsets.UTF_8 ));
+            final StringBuilder sb = new StringBuilder();
+            for ( byte b : hash ){
+                sb.append( String.format("%02x", b ));
+            }
+            return sb.toString();
+        } catch ( NoSuchAlgorithmException ex ){
+            throw new IllegalStateException( ex );
+        }
+    }
+
     public static String readStringFromInputStream(InputStream is) throws IOException {
         if ( is == null ){
             throw new IOException("Got empty Input Stream");
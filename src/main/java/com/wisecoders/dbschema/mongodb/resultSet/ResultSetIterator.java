@@ -23,35 +23,47 @@ public class ResultSetIterator implements ResultSet {
     private final Iterator iterator;
     private Object current;
     private static final int MAX_READ_AHEAD = 300;
-    private List<Object> readAhead = new ArrayList<>();
+    // POLLED FROM THE HEAD, SO EACH ROW IS RELEASED AS SOON AS IT IS CONSUMED
+    private final ArrayDeque<Object> readAhead = new ArrayDeque<>();
+    // ArrayDeque DOES NOT ACCEPT NULL ELEMENTS
+    private static final Object NULL_ROW = new Object();
     private boolean expandResultSet = false;
+    // JDBC Statement.setMaxRows(), zero means no limit
+    private final int maxRows;
+    private int rowCount = 0;
+    private volatile boolean isClosed = false;
     private final List<String> metaColumnsNames = new ArrayList<>();
     private final List<Integer> metaJavaTypes = new ArrayList<>();
     private final List<Integer> metaDisplaySize = new ArrayList<>();
 
     ResultSetIterator(){
         this.iterator = null;
+        this.maxRows = 0;
         initMetaData();
     }
 
     public ResultSetIterator(Iterable iterable, boolean expandResultSet){
-        iterator = (iterable != null ? iterable.iterator() : null);
-        this.expandResultSet = expandResultSet && iterator != null;
-        initMetaData();
+        this( iterable != null ? iterable.iterator() : null, expandResultSet );
     }
 
     public ResultSetIterator(Iterator iterator, boolean expandResultSet ){
+        this( iterator, expandResultSet, 0 );
+    }
+
+    public ResultSetIterator(Iterator iterator, boolean expandResultSet, int maxRows ){
         this.iterator = iterator;
         this.expandResultSet = expandResultSet && iterator != null;
+        this.maxRows = Math.max( maxRows, 0 );
         initMetaData();
     }
 
     private void initMetaData(){
         if ( expandResultSet ){
-            while ( iterator.hasNext() && readAhead.size() < MAX_READ_AHEAD ){
+            final int maxReadAhead = maxRows > 0 ? Math.min( maxRows, MAX_READ_AHEAD ) : MAX_READ_AHEAD;
+            while ( iterator.hasNext() && readAhead.size() < maxReadAhead ){
                 Object obj = iterator.next();
                 fillMetaData( obj );
-                readAhead.add( obj );
+                readAhead.add( obj != null ? obj : NULL_ROW );
             }
         } else {
             addMetaColumn( "document", Types.JAVA_OBJECT, 300 );
@@ -100,23 +112,40 @@ public class ResultSetIterator implements ResultSet {
     @Override
     public boolean next() throws SQLException {
         current = null;
-        if ( readAhead.size() > 0 ){
-            current = readAhead.get(0);
-            readAhead.remove(0);
+        if ( isClosed || ( maxRows > 0 && rowCount >= maxRows )){
+            return false;
+        }
+        if ( !readAhead.isEmpty() ){
+            current = readAhead.poll();
+            if ( current == NULL_ROW ) current = null;
+            rowCount++;
             return true;
         }
         if ( iterator != null ) {
             if ( iterator.hasNext() ) {
                 current = iterator.next();
                 fillMetaData( current );
+                rowCount++;
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * Close the MongoDB cursor, so the server cursor is killed. Called also by Statement.cancel() from another thread.
+     */
     @Override
     public void close() throws SQLException {
+        isClosed = true;
+        readAhead.clear();
+        if ( iterator instanceof AutoCloseable ){
+            try {
+                ((AutoCloseable)iterator).close();
+            } catch ( Exception ex ){
+                throw new SQLException( ex.getMessage(), ex );
+            }
+        }
     }
 
     @Override
@@ -931,7 +960,7 @@ public class ResultSetIterator implements ResultSet {
 
     @Override
     public boolean isClosed() throws SQLException {
-        return false;
+        return isClosed;
     }
 
     @Override
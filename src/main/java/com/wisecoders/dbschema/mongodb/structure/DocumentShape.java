@@ -0,0 +1,121 @@
+package com.wisecoders.dbschema.mongodb.structure;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Hash of the document structure: the key names and the value types, including the binary subtypes and the nested documents.
+ * Scanning a document with an already scanned structure would not change the collection fields, so with ScanOptions.skipKnownShapes
+ * such documents are skipped. Only their ObjectIds and arrays are still read, as they are sampled per document.
+ * The hash is computed directly on the BSON bytes, without decoding the names or the values.
+ * Array elements equal to the previous element are hashed once, so arrays of different length may have the same hash.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+class DocumentShape {
+
+    // FNV-1a 64 BIT
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private DocumentShape(){}
+
+    /**
+     * The buffer has to be positioned on the document start. Throws IllegalArgumentException for unknown BSON types.
+     */
+    static long fingerprint( ByteBuffer buffer ){
+        final ByteBuffer bytes = buffer.duplicate().order( ByteOrder.LITTLE_ENDIAN );
+        return hashDocument( bytes, bytes.position(), false, 0 );
+    }
+
+    private static long mix( long hash, int value ){
+        return ( hash ^ ( value & 0xff )) * PRIME;
+    }
+
+    private static long mix( long hash, long value ){
+        for ( int i = 0; i < 8; i++ ){
+            hash = mix( hash, (int)( value >>> ( i * 8 )));
+        }
+        return hash;
+    }
+
+    private static long hashDocument( ByteBuffer bytes, int start, boolean isArray, int level ){
+        long hash = mix( OFFSET_BASIS, isArray ? 4 : 3 );
+        long previousElement = 0;
+        final int end = start + bytes.getInt( start ) - 1;
+        int pos = start + 4;
+        while ( pos < end ){
+            final byte type = bytes.get( pos++ );
+            long element = mix( OFFSET_BASIS, type );
+            // ARRAY KEYS ARE THE ELEMENT INDEXES
+            byte c;
+            while (( c = bytes.get( pos++ )) != 0 ){
+                if ( !isArray ) hash = mix( hash, c );
+            }
+            if ( !isArray ) hash = mix( hash, 0 );
+            if ( type == 0x03 || type == 0x04 ){
+                // DEEPER DOCUMENTS ARE NOT SCANNED
+                if ( level + 1 < MetaObject.DISCOVER_CHILD_CASCADE_DEEPNESS ){
+                    element = mix( element, hashDocument( bytes, pos, type == 0x04, level + 1 ));
+                }
+            } else if ( type == 0x05 ){
+                element = mix( element, bytes.get( pos + 4 ));
+            }
+            pos = skipValue( bytes, pos, type );
+            if ( !isArray || element != previousElement ){
+                hash = mix( hash, element );
+            }
+            previousElement = element;
+        }
+        return hash;
+    }
+
+    /**
+     * True if the document contains ObjectIds other than the root _id, or arrays. These are read by MetaObject.scanRawSamples()
+     * also for documents with a known shape. The buffer has to be positioned on the document start.
+     */
+    static boolean hasSamples( ByteBuffer buffer ){
+        final ByteBuffer bytes = buffer.duplicate().order( ByteOrder.LITTLE_ENDIAN );
+        return hasSamples( bytes, bytes.position(), 0 );
+    }
+
+    private static boolean hasSamples( ByteBuffer bytes, int start, int level ){
+        final int end = start + bytes.getInt( start ) - 1;
+        int pos = start + 4;
+        while ( pos < end ){
+            final byte type = bytes.get( pos++ );
+            final boolean isId = level == 0 && bytes.get( pos ) == '_' && bytes.get( pos + 1 ) == 'i' && bytes.get( pos + 2 ) == 'd' && bytes.get( pos + 3 ) == 0;
+            while ( bytes.get( pos++ ) != 0 );
+            if ( type == 0x04 || ( type == 0x07 && !isId )){
+                return true;
+            }
+            if ( type == 0x03 && level + 1 < MetaObject.DISCOVER_CHILD_CASCADE_DEEPNESS && hasSamples( bytes, pos, level + 1 )){
+                return true;
+            }
+            pos = skipValue( bytes, pos, type );
+        }
+        return false;
+    }
+
+    // THE POSITION AFTER THE VALUE STARTING AT pos
+    private static int skipValue( ByteBuffer bytes, int pos, byte type ){
+        switch ( type ){
+            case 0x01: case 0x09: case 0x11: case 0x12: return pos + 8;
+            case 0x02: case 0x0D: case 0x0E: return pos + 4 + bytes.getInt( pos );
+            case 0x03: case 0x04: case 0x0F: return pos + bytes.getInt( pos );
+            case 0x05: return pos + 5 + bytes.getInt( pos );
+            case 0x06: case 0x0A: case (byte)0xFF: case 0x7F: return pos;
+            case 0x07: return pos + 12;
+            case 0x08: return pos + 1;
+            case 0x0B:
+                while ( bytes.get( pos++ ) != 0 );
+                while ( bytes.get( pos++ ) != 0 );
+                return pos;
+            case 0x0C: return pos + 4 + bytes.getInt( pos ) + 12;
+            case 0x10: return pos + 4;
+            case 0x13: return pos + 16;
+            default: throw new IllegalArgumentException("Unknown BSON type " + type );
+        }
+    }
+}
@@ -1,15 +1,31 @@
 package com.wisecoders.dbschema.mongodb.structure;
 
+import com.mongodb.MongoException;
 import com.mongodb.client.ListIndexesIterable;
 import com.mongodb.client.MongoCursor;
+import com.wisecoders.dbschema.mongodb.ScanOptions;
 import com.wisecoders.dbschema.mongodb.ScanStrategy;
 import com.wisecoders.dbschema.mongodb.wrappers.WrappedMongoCollection;
+import org.bson.BsonBinaryReader;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 
 import static com.wisecoders.dbschema.mongodb.JdbcDriver.LOGGER;
@@ -22,8 +38,21 @@ public class MetaCollection extends MetaObject {
 
     public final MetaDatabase metaDatabase;
     public final boolean isVirtual;
+    // USED BY THE SCHEMA TTL
+    final long discoveryTime = System.currentTimeMillis();
 
-    public final List<MetaIndex> metaIndexes = new ArrayList<>();
+    public final List<MetaIndex> metaIndexes = new CopyOnWriteArrayList<>();
+
+    // THE DocumentShape OF THE SCANNED DOCUMENTS, MAPPED TO DocumentShape.hasSamples(). WITH skipKnownShapes DOCUMENTS WITH A KNOWN SHAPE ARE SKIPPED
+    private static final int MAX_SHAPES = 10000;
+    private final Map<Long,Boolean> scannedShapes = new HashMap<>();
+    long skippedDocuments = 0;
+    // SET FROM THE ScanOptions, READ BY MetaObject WHILE SCANNING ARRAYS
+    int arraySampleSize = 0;
+    boolean skipKnownShapes = false;
+    long skippedArrayElements = 0;
+    // INCREMENTED FOR EACH NEW FIELD, TYPE WIDENING OR FIELD BECOMING OPTIONAL
+    long structureChanges = 0;
 
     public MetaCollection( final MetaDatabase metaDatabase, final String name, boolean isVirtual) {
         super(null, name );
@@ -34,7 +63,7 @@ public class MetaCollection extends MetaObject {
         final MetaField idField = new MetaField(this, "_id" );
         idField.setMandatory(true);
         idField.setTypeClass( ObjectId.class );
-        fields.add(idField);
+        addField(idField);
         MetaIndex pkId = createMetaIndex( "_id_", true, false );
         pkId.addColumn( idField );
     }
@@ -45,32 +74,323 @@ public class MetaCollection extends MetaObject {
         return index;
     }
 
-    public MetaCollection scanDocumentsAndIndexes(final WrappedMongoCollection mongoCollection, final ScanStrategy strategy, boolean sortFields ) {
-        scanDocuments( mongoCollection, strategy, sortFields );
+    public synchronized MetaCollection scanDocumentsAndIndexes(final WrappedMongoCollection mongoCollection, final ScanOptions options ) {
+        scanDocuments( mongoCollection, options );
+        sortFields();
         scanIndexes( mongoCollection );
         return this;
     }
 
-    private void scanDocuments(final WrappedMongoCollection mongoCollection, ScanStrategy strategy, boolean sortFields ) {
+    /**
+     * Scan a document inserted or modified after the first scan. New fields are added as optional.
+     */
+    public synchronized void scanChangedDocument( Document document, boolean sortFields ){
+        scanDocument( document, sortFields, 0 );
+        sortFields();
+    }
+
+    public synchronized void refreshIndexes( final WrappedMongoCollection mongoCollection ){
+        metaIndexes.clear();
+        createMetaIndex( "_id_", true, false ).addColumn( getField("_id") );
+        scanIndexes( mongoCollection );
+    }
+
+    /**
+     * For collections defined by validators: read a few documents only to find the ObjectId fields used to discover references.
+     */
+    public synchronized void sampleObjectIds( final WrappedMongoCollection mongoCollection, int sampleSize ){
+        try ( MongoCursor cursor = mongoCollection.find().limit( sampleSize ).iterator() ) {
+            while ( cursor.hasNext() ){
+                final Object document = cursor.next();
+                if ( document instanceof Map ){
+                    collectObjectIds( (Map)document, 0 );
+                }
+            }
+        } catch ( MongoException ex ){
+            LOGGER.log( Level.INFO, "Reading ObjectId samples from " + mongoCollection + " failed. " + ex.getMessage() );
+        }
+    }
+
+    private void scanDocuments(final WrappedMongoCollection mongoCollection, ScanOptions options ) {
         long scanStartTime = System.currentTimeMillis();
-        long cnt = scan(mongoCollection, strategy, true, sortFields);
-        if ( getFieldCount() < 400 && cnt == strategy.SCAN_COUNT && strategy != ScanStrategy.full ){
-            cnt +=scan(mongoCollection, strategy, false, sortFields);;
+        final boolean sortFields = options.sortFields;
+        // FOR sample WITHOUT $sample AND stratified WITHOUT ObjectId WE READ HALF OF THE SAMPLE SIZE FROM EACH END
+        final boolean isSampled = options.strategy == ScanStrategy.sample || options.strategy == ScanStrategy.stratified;
+        final long scanCount = isSampled ? Math.max( options.sampleSize / 2, 1 ) : options.strategy.SCAN_COUNT;
+        final boolean useSample = options.strategy == ScanStrategy.sample && !isView( mongoCollection );
+        final List<Document> bucketFilters = options.strategy == ScanStrategy.stratified ? getBucketFilters( mongoCollection, options.bucketCount ) : null;
+        final long bucketSize = bucketFilters != null ? Math.max( options.sampleSize / bucketFilters.size(), 1 ) : 0;
+        long cnt = -1;
+        skippedDocuments = 0;
+        skippedArrayElements = 0;
+        arraySampleSize = options.arraySampleSize;
+        skipKnownShapes = options.skipKnownShapes;
+        if ( options.strategy == ScanStrategy.adaptive ){
+            try ( MongoCursor cursor = mongoCollection.find( RawBsonDocument.class ).sort("{_id:1}").iterator() ) {
+                cnt = scanUntilConverged( cursor, options );
+            }
+        } else if ( options.serverScan ){
+            cnt = scanOnServer( mongoCollection, options, useSample, scanCount, bucketFilters, bucketSize );
+        }
+        if ( cnt < 0 && bucketFilters != null ){
+            cnt = scanBuckets( mongoCollection, bucketFilters, bucketSize, sortFields );
+        }
+        if ( cnt < 0 && useSample ){
+            cnt = sample( mongoCollection, options.sampleSize, sortFields );
+        }
+        if ( cnt < 0 ){
+            cnt = scan(mongoCollection, scanCount, true, sortFields);
+            if ( getFieldCount() < 400 && cnt == scanCount && options.strategy != ScanStrategy.full ){
+                cnt +=scan(mongoCollection, scanCount, false, sortFields);
+            }
         }
-        LOGGER.log( Level.INFO, "Scanned " + mongoCollection + " " + cnt + " documents, " + getFieldCount() + " fields in " + ( System.currentTimeMillis() - scanStartTime ) + "ms" );
+        LOGGER.log( Level.INFO, "Scanned " + mongoCollection + " " + cnt + " documents ( " + skippedDocuments + " with known shape, " + skippedArrayElements + " array elements skipped ), " + getFieldCount() + " fields in " + ( System.currentTimeMillis() - scanStartTime ) + "ms" );
     }
 
-    private long scan(WrappedMongoCollection mongoCollection, ScanStrategy strategy, boolean directionUp, boolean sortFields ) {
+    /**
+     * Scan random documents selected on the server with $sample, so the documents from the middle of the collection are seen as well.
+     * Return -1 if the server doesn't support $sample.
+     */
+    private long sample(WrappedMongoCollection mongoCollection, long sampleSize, boolean sortFields ) {
         long cnt = 0;
-        try ( MongoCursor cursor = mongoCollection.find().sort("{_id:" + (directionUp ? "1" : "-1") + "}" ).iterator() ) {
-            while (cursor.hasNext() && cnt < strategy.SCAN_COUNT) {
-                scanDocument(cursor.next(), sortFields, 0);
+        try ( MongoCursor cursor = mongoCollection.aggregate( Collections.singletonList( new Document("$sample", new Document("size", sampleSize ))), RawBsonDocument.class ).iterator() ) {
+            while (cursor.hasNext()) {
+                scanRawDocument(cursor.next(), sortFields);
                 cnt++;
             }
+        } catch ( MongoException ex ){
+            if ( cnt > 0 ) {
+                return cnt;
+            }
+            LOGGER.log( Level.INFO, "Sampling " + mongoCollection + " failed, scanning by _id. " + ex.getMessage() );
+            return -1;
+        }
+        return cnt;
+    }
+
+    /**
+     * On views $sample would first evaluate the complete view pipeline, so views are scanned by _id.
+     */
+    private boolean isView( WrappedMongoCollection mongoCollection ){
+        try {
+            return mongoCollection.isView();
+        } catch ( MongoException ex ){
+            LOGGER.log( Level.FINE, "Cannot check if " + mongoCollection + " is a view.", ex );
+        }
+        return false;
+    }
+
+    /**
+     * Deduce the fields using SchemaAggregation, so only field names, types and counts are transferred.
+     * The documents are selected like for the client scan: $sample, the _id buckets, all documents, or the first and last documents by _id.
+     * Return -1 if the server cannot run the aggregation, for example servers older than 4.4 without $binarySize.
+     */
+    private long scanOnServer(WrappedMongoCollection mongoCollection, ScanOptions options, boolean useSample, long scanCount, List<Document> bucketFilters, long bucketSize ) {
+        final List<List<Document>> sources = new ArrayList<>();
+        if ( bucketFilters != null ){
+            for ( Document filter : bucketFilters ){
+                sources.add( Arrays.asList( new Document("$match", filter ), new Document("$sort", new Document("_id", 1 )), new Document("$limit", bucketSize )));
+            }
+        } else if ( useSample ){
+            sources.add( Collections.singletonList( new Document("$sample", new Document("size", options.sampleSize ))));
+        } else if ( options.strategy == ScanStrategy.full ){
+            sources.add( Collections.emptyList() );
+        } else {
+            sources.add( Arrays.asList( new Document("$sort", new Document("_id", 1 )), new Document("$limit", scanCount )));
+            sources.add( Arrays.asList( new Document("$sort", new Document("_id", -1 )), new Document("$limit", scanCount )));
+        }
+        final SchemaAggregation aggregation = new SchemaAggregation();
+        try {
+            aggregation.scan( mongoCollection, sources );
+        } catch ( MongoException ex ){
+            LOGGER.log( Level.INFO, "Server scan of " + mongoCollection + " failed, reading the documents. " + ex.getMessage() );
+            return -1;
+        }
+        aggregation.apply( this, options.sortFields );
+        return aggregation.getDocumentCount();
+    }
+
+    /**
+     * Scan until no field was added, widened or made optional in the last convergenceCount documents, or until the scan time is over.
+     */
+    long scanUntilConverged( Iterator<?> documents, ScanOptions options ){
+        final long deadline = System.currentTimeMillis() + options.scanTimeMs;
+        long cnt = 0, lastChangeCnt = 0, lastStructureChanges = structureChanges;
+        String reason = "all documents were scanned";
+        while ( documents.hasNext() ){
+            scanRawDocument( documents.next(), options.sortFields );
+            cnt++;
+            if ( structureChanges != lastStructureChanges ){
+                lastStructureChanges = structureChanges;
+                lastChangeCnt = cnt;
+            } else if ( cnt - lastChangeCnt >= options.convergenceCount ){
+                reason = "the structure did not change in the last " + options.convergenceCount + " documents";
+                break;
+            }
+            if ( System.currentTimeMillis() > deadline ){
+                reason = "the scan time of " + options.scanTimeMs + "ms is over";
+                break;
+            }
         }
+        LOGGER.log( Level.INFO, "Adaptive scan of " + name + " stopped after " + cnt + " documents, as " + reason + ". Last change in document " + lastChangeCnt + "." );
         return cnt;
     }
 
+    /**
+     * Split the time between the first and the last _id ObjectId in buckets of equal length, and return the _id filter for each bucket.
+     * The first and the last bucket are open, so all documents are included. Return null if the _id is not an ObjectId.
+     */
+    private List<Document> getBucketFilters( WrappedMongoCollection mongoCollection, int bucketCount ){
+        try {
+            final Object first = getBoundaryId( mongoCollection, 1 );
+            final Object last = getBoundaryId( mongoCollection, -1 );
+            if ( first instanceof ObjectId && last instanceof ObjectId ){
+                return createBucketFilters( (ObjectId)first, (ObjectId)last, bucketCount );
+            }
+            LOGGER.log( Level.INFO, "The _id in " + mongoCollection + " is not an ObjectId, scanning the first and last documents." );
+        } catch ( MongoException ex ){
+            LOGGER.log( Level.INFO, "Cannot read the _id range of " + mongoCollection + ". " + ex.getMessage() );
+        }
+        return null;
+    }
+
+    private Object getBoundaryId( WrappedMongoCollection mongoCollection, int direction ){
+        final Object document = mongoCollection.find( Document.class ).projection( (Bson)new Document("_id", 1 )).sort( (Bson)new Document("_id", direction )).limit( 1 ).first();
+        return document instanceof Document ? ((Document)document).get("_id") : null;
+    }
+
+    static List<Document> createBucketFilters( ObjectId first, ObjectId last, int bucketCount ){
+        final long start = first.getTimestamp() & 0xFFFFFFFFL;
+        final long end = ( last.getTimestamp() & 0xFFFFFFFFL ) + 1;
+        final List<Document> filters = new ArrayList<>();
+        ObjectId lower = null;
+        long lowerSeconds = start;
+        for ( int i = 1; i <= bucketCount; i++ ){
+            final long upperSeconds = start + ( end - start ) * i / bucketCount;
+            // RANGES SHORTER THAN THE BUCKET COUNT IN SECONDS WOULD PRODUCE EMPTY BUCKETS
+            if ( i < bucketCount && upperSeconds == lowerSeconds ) continue;
+            final ObjectId upper = i < bucketCount ? getFirstObjectId( upperSeconds ) : null;
+            final Document range = new Document();
+            if ( lower != null ) range.append("$gte", lower );
+            if ( upper != null ) range.append("$lt", upper );
+            filters.add( range.isEmpty() ? new Document() : new Document("_id", range ));
+            lower = upper;
+            lowerSeconds = upperSeconds;
+        }
+        return filters;
+    }
+
+    // THE SMALLEST OBJECTID WITH THIS TIMESTAMP
+    private static ObjectId getFirstObjectId( long timestampSeconds ){
+        return new ObjectId( ByteBuffer.allocate( 12 ).putInt( (int)timestampSeconds ).array() );
+    }
+
+    private static final int MAX_BUCKET_THREADS = 16;
+    // SHARED BY ALL SCANS, SO COLLECTIONS DISCOVERED IN PARALLEL DO NOT MULTIPLY THE THREADS AND THE SERVER CONNECTIONS
+    private static final ThreadPoolExecutor BUCKET_EXECUTOR = new ThreadPoolExecutor( MAX_BUCKET_THREADS, MAX_BUCKET_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        final Thread thread = new Thread( runnable, "MongoDB bucket scan" );
+        thread.setDaemon( true );
+        return thread;
+    });
+
+    static {
+        BUCKET_EXECUTOR.allowCoreThreadTimeOut( true );
+    }
+
+    /**
+     * Read the first bucketSize documents from each _id bucket. The buckets are read in parallel, at most MAX_BUCKET_THREADS
+     * for all collections, then scanned in order. Return -1 if reading fails.
+     */
+    private long scanBuckets( WrappedMongoCollection mongoCollection, List<Document> bucketFilters, long bucketSize, boolean sortFields ){
+        final long scanStartTime = System.currentTimeMillis();
+        final List<Future<List<RawBsonDocument>>> futures = new ArrayList<>();
+        try {
+            for ( Document filter : bucketFilters ){
+                futures.add( BUCKET_EXECUTOR.submit( () -> readBucket( mongoCollection, filter, bucketSize )));
+            }
+            long cnt = 0;
+            for ( Future<List<RawBsonDocument>> future : futures ){
+                for ( RawBsonDocument document : future.get() ){
+                    scanRawDocument( document, sortFields );
+                    cnt++;
+                }
+            }
+            LOGGER.log( Level.INFO, "Read " + cnt + " documents from " + bucketFilters.size() + " _id buckets of " + mongoCollection + " in " + ( System.currentTimeMillis() - scanStartTime ) + "ms" );
+            return cnt;
+        } catch ( InterruptedException ex ){
+            Thread.currentThread().interrupt();
+        } catch ( ExecutionException ex ){
+            LOGGER.log( Level.INFO, "Reading the _id buckets of " + mongoCollection + " failed, scanning the first and last documents.", ex.getCause() );
+        } finally {
+            // AFTER A FAILURE, DO NOT READ THE REMAINING BUCKETS
+            for ( Future<List<RawBsonDocument>> future : futures ){
+                future.cancel( true );
+            }
+        }
+        return -1;
+    }
+
+    private static List<RawBsonDocument> readBucket( WrappedMongoCollection mongoCollection, Document filter, long bucketSize ){
+        final List<RawBsonDocument> documents = new ArrayList<>();
+        try ( MongoCursor cursor = mongoCollection.find( RawBsonDocument.class ).filter( (Bson)filter ).sort( (Bson)new Document("_id", 1 )).limit( (int)bucketSize ).iterator() ) {
+            while ( cursor.hasNext() ){
+                documents.add( (RawBsonDocument)cursor.next() );
+            }
+        }
+        return documents;
+    }
+
+    private long scan(WrappedMongoCollection mongoCollection, long scanCount, boolean directionUp, boolean sortFields ) {
+        long cnt = 0;
+        try ( MongoCursor cursor = mongoCollection.find( RawBsonDocument.class ).sort("{_id:" + (directionUp ? "1" : "-1") + "}" ).iterator() ) {
+            while (cursor.hasNext() && cnt < scanCount) {
+                scanRawDocument(cursor.next(), sortFields);
+                cnt++;
+            }
+        }
+        return cnt;
+    }
+
+    /**
+     * The documents are read as RawBsonDocument, so the values are not decoded. Large strings and binaries are skipped.
+     * With skipKnownShapes, documents with the same DocumentShape as an already scanned document are skipped, except their ObjectIds and arrays.
+     */
+    void scanRawDocument( Object document, boolean sortFields ){
+        if ( document instanceof RawBsonDocument ){
+            final ByteBuffer buffer = ((RawBsonDocument)document).getByteBuffer().asNIO();
+            try ( BsonBinaryReader reader = new BsonBinaryReader( buffer )){
+                if ( skipKnownShapes && isKnownShape( buffer, reader )){
+                    skippedDocuments++;
+                } else {
+                    scanRawDocument( reader, sortFields, 0 );
+                }
+            }
+        } else {
+            scanDocument( document, sortFields, 0 );
+        }
+    }
+
+    private boolean isKnownShape( ByteBuffer buffer, BsonBinaryReader reader ){
+        final Boolean hasSamples;
+        try {
+            final long shape = DocumentShape.fingerprint( buffer );
+            hasSamples = scannedShapes.get( shape );
+            if ( hasSamples == null && scannedShapes.size() < MAX_SHAPES ){
+                scannedShapes.put( shape, DocumentShape.hasSamples( buffer ));
+            }
+        } catch ( RuntimeException ex ){
+            LOGGER.log( Level.FINE, "Cannot compute the document shape in " + name, ex );
+            return false;
+        }
+        if ( hasSamples == null ){
+            return false;
+        }
+        if ( hasSamples ){
+            scanRawSamples( reader, 0 );
+        }
+        return true;
+    }
+
     private static final String KEY_NAME = "name";
     private static final String KEY_UNIQUE = "unique";
     private static final String KEY_KEY = "key";
@@ -6,6 +6,10 @@ import org.bson.Document;
 import org.bson.types.ObjectId;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 
 import static com.wisecoders.dbschema.mongodb.JdbcDriver.LOGGER;
@@ -18,8 +22,13 @@ import static com.wisecoders.dbschema.mongodb.JdbcDriver.LOGGER;
 public class MetaDatabase {
 
     public final String name;
-    private final Map<String, MetaCollection> metaCollections = new HashMap<>();
-    private boolean referencesDiscovered = false;
+    // CONCURRENT, AS COLLECTIONS ARE DISCOVERED IN PARALLEL AND BY MORE CONNECTIONS
+    private final Map<String, MetaCollection> metaCollections = new ConcurrentHashMap<>();
+    // THE COLLECTIONS BEING DISCOVERED. CONCURRENT CALLERS WAIT FOR THE SAME DISCOVERY
+    private final Map<String, CompletableFuture<MetaCollection>> discoveries = new ConcurrentHashMap<>();
+    private volatile boolean referencesDiscovered = false;
+    // VOLATILE, SO getMetaCollection() CHECKS IT WITHOUT LOCKING
+    private volatile boolean validatorsLoaded = false;
 
     public MetaDatabase( String name ){
         this.name =  name;
@@ -31,25 +40,130 @@ public class MetaDatabase {
         return metaCollection;
     }
 
+    public void addMetaCollection( MetaCollection metaCollection ){
+        metaCollections.put( metaCollection.name, metaCollection );
+    }
+
     public MetaCollection getMetaCollection(String name ){
         return metaCollections.get( name );
     }
 
+    /**
+     * A copy of the collections, so it can be iterated while other collections are discovered.
+     */
     public Collection<MetaCollection> getMetaCollections(){
-        return metaCollections.values();
+        return new ArrayList<>( metaCollections.values() );
     }
 
     public void dropMetaCollection(String name ){
         metaCollections.remove( name );
     }
 
+    /**
+     * Return the collection, or discover it using the given task. The discovery is single-flight: if another thread is
+     * discovering the same collection, wait for its result instead of scanning again. The task returns a new MetaCollection,
+     * which is added to the database only when the task is done. Discovered collections older than
+     * ttlMs are discovered again, collections defined by validators are kept until refresh(). A ttlMs of 0 means no expiration.
+     */
+    public MetaCollection discoverMetaCollection( String name, long ttlMs, Callable<MetaCollection> discovery ){
+        CompletableFuture<MetaCollection> future = discoveries.get( name );
+        if ( future == null ){
+            final MetaCollection metaCollection = metaCollections.get( name );
+            final boolean isExpired = metaCollection != null && isExpired( metaCollection, ttlMs );
+            if ( metaCollection != null && !isExpired ){
+                return metaCollection;
+            }
+            final CompletableFuture<MetaCollection> newFuture = new CompletableFuture<>();
+            future = discoveries.putIfAbsent( name, newFuture );
+            if ( future == null ){
+                future = newFuture;
+                try {
+                    // ANOTHER THREAD MAY HAVE FINISHED THE DISCOVERY SINCE WE CHECKED
+                    final MetaCollection current = metaCollections.get( name );
+                    if ( current != null && current != metaCollection ){
+                        newFuture.complete( current );
+                    } else {
+                        if ( isExpired ){
+                            LOGGER.info("Schema of " + this.name + "." + name + " expired.");
+                            metaCollections.remove( name, metaCollection );
+                            referencesDiscovered = false;
+                        }
+                        final MetaCollection discovered = discovery.call();
+                        // ADDED ONLY AFTER THE SCAN, SO OTHER THREADS NEVER SEE A PARTIALLY SCANNED COLLECTION.
+                        // NOT ADDED IF refresh() REMOVED THE DISCOVERY MEANWHILE, AS IT MAY BE OUTDATED
+                        if ( discovered != null ){
+                            discoveries.computeIfPresent( name, ( key, pending ) -> {
+                                if ( pending == newFuture ){
+                                    metaCollections.put( name, discovered );
+                                }
+                                return pending;
+                            });
+                        }
+                        newFuture.complete( discovered );
+                    }
+                } catch ( Throwable ex ){
+                    newFuture.completeExceptionally( ex );
+                } finally {
+                    discoveries.remove( name, newFuture );
+                }
+            }
+        }
+        try {
+            return future.get();
+        } catch ( InterruptedException ex ){
+            Thread.currentThread().interrupt();
+        } catch ( ExecutionException ex ){
+            LOGGER.log( Level.SEVERE, "Error discovering collection " + this.name + "." + name + ". ", ex.getCause() );
+        }
+        return null;
+    }
+
+    private static boolean isExpired( MetaCollection metaCollection, long ttlMs ){
+        return metaCollection.isVirtual && ttlMs > 0 && System.currentTimeMillis() - metaCollection.discoveryTime >= ttlMs;
+    }
+
+    /**
+     * True after the collections defined by validators were loaded, until refresh().
+     */
+    public boolean isValidatorsLoaded(){
+        return validatorsLoaded;
+    }
+
+    /**
+     * Called while holding the MetaDatabase lock, when the collections defined by validators are loaded.
+     */
+    public void setValidatorsLoaded(){
+        validatorsLoaded = true;
+    }
+
+    /**
+     * Forget one collection, so it is discovered again. A running discovery still returns its result to the callers
+     * waiting for it, but the result is not kept.
+     */
+    public void refresh( String name ){
+        discoveries.remove( name );
+        metaCollections.remove( name );
+        referencesDiscovered = false;
+    }
+
+    /**
+     * Forget all collections, including the ones defined by validators.
+     */
+    public synchronized void refresh(){
+        discoveries.clear();
+        metaCollections.clear();
+        referencesDiscovered = false;
+        validatorsLoaded = false;
+    }
+
     private void collectFieldsWithObjectId( List<MetaField> metaFields ){
-        for ( MetaCollection collection : metaCollections.values() ){
+        for ( MetaCollection collection : getMetaCollections() ){
             collection.collectFieldsWithObjectId( metaFields );
         }
     }
 
-    public void discoverReferences(WrappedMongoDatabase mongoDatabase ){
+    // SYNCHRONIZED, SO CONCURRENT CALLERS WAIT UNTIL THE REFERENCES ARE DISCOVERED
+    public synchronized void discoverReferences(WrappedMongoDatabase mongoDatabase ){
         if ( !referencesDiscovered){
             try {
                 LOGGER.info("Discover relationships in database " + name );
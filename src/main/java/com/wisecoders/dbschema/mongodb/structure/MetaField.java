@@ -15,9 +15,12 @@ public class MetaField {
 
     public final MetaObject parentObject;
     public final String name;
-    private Class<?> typeClass;
-    private String typeName;
-    private int javaType = Integer.MIN_VALUE;
+    // THE PATH IS COMPUTED ONCE, AS THE PARENT CANNOT CHANGE. INTERNED, AS THE SAME PATHS REPEAT IN COLLECTIONS AND CONNECTIONS
+    private final String nameWithPath;
+    // PACKAGE VISIBLE FOR THE SchemaCache
+    Class<?> typeClass;
+    String typeName;
+    int javaType = Integer.MIN_VALUE;
     public ObjectId objectId;
     public final List<MetaReference> references = new ArrayList<>();
     private boolean mandatory = true;
@@ -28,6 +31,7 @@ public class MetaField {
     MetaField(final MetaObject parentObject, final String name ){
         this.parentObject = parentObject;
         this.name = (name!= null ? name : "");
+        this.nameWithPath = ( parentObject != null && !(parentObject instanceof MetaCollection ) ? parentObject.getNameWithPath() + "." + this.name : this.name ).intern();
     }
 
     void setObjectId(ObjectId objectId){
@@ -41,7 +45,7 @@ public class MetaField {
     }
 
     public String getNameWithPath(){
-        return ( parentObject != null && !(parentObject instanceof MetaCollection ) ? parentObject.getNameWithPath() + "." + name : name );
+        return nameWithPath;
     }
 
     public String getPkColumnName(){
@@ -78,9 +82,20 @@ public class MetaField {
         return getNameWithPath();
     }
     void setMandatory( boolean mandatory ){
+        if ( this.mandatory && !mandatory ){
+            structureChanged();
+        }
         this.mandatory = mandatory;
     }
 
+    // COUNTED BY THE ADAPTIVE SCAN, WHICH STOPS WHEN THE STRUCTURE DOES NOT CHANGE ANYMORE
+    void structureChanged(){
+        final MetaCollection metaCollection = getMetaCollection();
+        if ( metaCollection != null ){
+            metaCollection.structureChanges++;
+        }
+    }
+
     public boolean isMandatory(){
         return mandatory;
     }
@@ -111,7 +126,13 @@ public class MetaField {
 
     public void setTypeFromValue( Object value ){
         if ( value != null ) {
-            Class<?> valueCls = value.getClass();
+            setTypeFromClass( value.getClass() );
+        }
+    }
+
+    void setTypeFromClass( Class<?> valueCls ){
+        if ( valueCls != null ) {
+            final Class<?> previousClass = typeClass;
             if ( typeClass == null ) {
                 typeClass = valueCls;
             } else if (typeClass != valueCls) {
@@ -119,6 +140,9 @@ public class MetaField {
                 if (valueCls.isAssignableFrom(typeClass)) typeClass = valueCls;
                 else if (!typeClass.isAssignableFrom(valueCls)) typeClass = Object.class;
             }
+            if ( typeClass != previousClass ){
+                structureChanged();
+            }
         }
     }
 
@@ -3,11 +3,12 @@ package com.wisecoders.dbschema.mongodb.structure;
 import com.google.gson.GsonBuilder;
 import com.mongodb.DBRef;
 import com.wisecoders.dbschema.mongodb.Util;
-import org.bson.Document;
-import org.bson.types.ObjectId;
+import org.bson.*;
+import org.bson.types.*;
 
 import java.sql.Types;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
@@ -18,54 +19,110 @@ public class MetaObject extends MetaField {
     public static final int TYPE_OBJECT = 4999544;
     public static final int TYPE_ARRAY = 4999545;
 
+    // MODIFIED ONLY BY THE SCAN, WHICH HOLDS THE MetaCollection LOCK. OTHER THREADS SHOULD READ getFields()
     public final List<MetaField> fields = new ArrayList<>();
+    // READ-ONLY COPY OF THE FIELDS, CREATED AGAIN ONLY AFTER CHANGES
+    private volatile List<MetaField> fieldsSnapshot;
+    // THE FIRST FIELD WITH EACH NAME, SO WIDE DOCUMENTS ARE NOT SEARCHED LINEARLY FOR EACH KEY
+    private final Map<String, MetaField> fieldsByName = new ConcurrentHashMap<>();
+    // SORTING IS DONE ONCE, BY sortFields(), AFTER THE SCAN
+    private volatile boolean unsorted = false;
 
     MetaObject(MetaObject parentObject, String name ){
         super( parentObject, name );
     }
 
     public MetaField getField( String name ){
-        for ( MetaField field : fields){
-            if ( field.name.equals( name )) return field;
+        return name != null ? fieldsByName.get( name ) : null;
+    }
+
+    /**
+     * The fields, safe to iterate while a change stream adds new fields.
+     */
+    public List<MetaField> getFields(){
+        List<MetaField> snapshot = fieldsSnapshot;
+        if ( snapshot == null ){
+            synchronized ( getLock() ){
+                snapshot = Collections.unmodifiableList( new ArrayList<>( fields ));
+                fieldsSnapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    private Object getLock(){
+        final MetaCollection metaCollection = getMetaCollection();
+        return metaCollection != null ? metaCollection : this;
+    }
+
+    // A FIELD MAY EXIST TWICE, AS VALUE AND AS OBJECT
+    private MetaObject getObjectField( String name ){
+        final MetaField field = getField( name );
+        if ( field == null || field instanceof MetaObject ){
+            return (MetaObject)field;
+        }
+        for ( MetaField other : getFields() ){
+            if ( other instanceof MetaObject && other.name.equals( name )) return (MetaObject)other;
         }
         return null;
     }
 
-    public MetaField createField(String name, boolean sortFields ){
-        final MetaField field = new MetaField( this, name );
+    void addField( MetaField field ){
+        field.structureChanged();
         fields.add( field );
-        if ( sortFields ) {
-            fields.sort(FIELDS_COMPARATOR);
+        fieldsSnapshot = null;
+        if ( field.name != null ){
+            fieldsByName.putIfAbsent( field.name, field );
+        }
+    }
+
+    private void addField( MetaField field, boolean sortFields ){
+        addField( field );
+        if ( sortFields ){
+            unsorted = true;
+        }
+    }
+
+    /**
+     * Sort the fields added with sortFields=true, here and in the child objects. Called once at the end of each scan.
+     */
+    public void sortFields(){
+        if ( unsorted ){
+            fields.sort( FIELDS_COMPARATOR );
+            fieldsSnapshot = null;
+            unsorted = false;
+        }
+        for ( MetaField field : fields ){
+            if ( field instanceof MetaObject ){
+                ((MetaObject)field).sortFields();
+            }
         }
+    }
+
+    public MetaField createField(String name, boolean sortFields ){
+        final MetaField field = new MetaField( this, name );
+        addField( field, sortFields );
         return field;
     }
 
     public MetaField createField(String name, String typeName, int javaType, boolean mandatory, boolean sortFields ){
-        for ( MetaField field : fields){
-            if ( field.name.equals( name )) return field;
-        }
+        final MetaField existing = getField( name );
+        if ( existing != null ) return existing;
         final MetaField field = new MetaField( this, name );
         field.setTypeName( typeName );
         field.setJavaType( javaType );
         field.setMandatory( mandatory );
-        fields.add( field );
-        if ( sortFields ) {
-            fields.sort(FIELDS_COMPARATOR);
-        }
+        addField( field, sortFields );
         return field;
     }
 
     public MetaObject createObjectField(String name, boolean mandatory, boolean sortFields ){
-        for ( MetaField field : fields){
-            if ( field instanceof MetaObject && field.name.equals( name )) return (MetaObject)field;
-        }
+        final MetaObject existing = getObjectField( name );
+        if ( existing != null ) return existing;
         MetaObject json = new MetaObject( this, name );
         json.setTypeName("object");
         json.setJavaType( TYPE_OBJECT );
-        fields.add( json );
-        if ( sortFields ){
-            fields.sort(FIELDS_COMPARATOR);
-        }
+        addField( json, sortFields );
         json.setMandatory( mandatory );
         return json;
     }
@@ -82,36 +139,43 @@ public class MetaObject extends MetaField {
     };
 
     public MetaObject createArrayField(String name, String typeName, boolean mandatoryIfNew, boolean sortFields){
-        for ( MetaField field : fields){
-            if ( field instanceof MetaObject && field.name.equals( name )) return (MetaObject)field;
-        }
+        final MetaObject existing = getObjectField( name );
+        if ( existing != null ) return existing;
         MetaObject json = new MetaObject( this, name );
         json.setTypeName( typeName );
         json.setJavaType( TYPE_ARRAY );
         json.setMandatory( mandatoryIfNew);
-        fields.add( json );
-        if ( sortFields ){
-            fields.sort(FIELDS_COMPARATOR);
-        }
+        addField( json, sortFields );
         return json;
     }
 
     @Override
     public void collectFieldsWithObjectId(List<MetaField> unsolvedFields) {
         super.collectFieldsWithObjectId(unsolvedFields);
-        for ( MetaField field : fields ){
+        for ( MetaField field : getFields() ){
             field.collectFieldsWithObjectId(unsolvedFields);
         }
     }
 
-    MetaField findField( String name ){
-        for ( MetaField other : fields ){
-            if ( name != null && other.getNameWithPath() != null && name.startsWith( other.getNameWithPath())){
-                MetaField found = null;
-                if ( other instanceof MetaObject){
-                    found = ((MetaObject)other).findField(  name );
-                }
-                return found != null ? found : other;
+    /**
+     * Find a field by the path used in indexes, like 'address.city'. The field names form a trie, so the path is resolved
+     * by one hash lookup for each path element. If the path is not complete, the deepest found object is returned.
+     */
+    MetaField findField( String path ){
+        if ( path == null ){
+            return null;
+        }
+        // FIELD NAMES MAY CONTAIN '.'
+        final MetaField field = getField( path );
+        if ( field != null ){
+            return field;
+        }
+        final int idx = path.indexOf('.');
+        if ( idx > 0 ){
+            final MetaObject child = getObjectField( path.substring( 0, idx ));
+            if ( child != null ){
+                final MetaField found = child.findField( path.substring( idx + 1 ));
+                return found != null ? found : child;
             }
         }
         return null;
@@ -186,9 +250,43 @@ public class MetaObject extends MetaField {
     }
 
 
+    /**
+     * Set the ObjectId samples of the existing fields, used to discover the references. No fields are created or modified.
+     * Used for the collections defined by validators.
+     */
+    void collectObjectIds( Map document, int level ){
+        if ( level >= DISCOVER_CHILD_CASCADE_DEEPNESS ) return;
+        for ( Object key : document.keySet() ){
+            final Object value = document.get( key );
+            if ( value instanceof ObjectId ){
+                final MetaField field = getField( String.valueOf( key ));
+                // VALUES WHICH ARE OBJECTID AND ARE NOT _id IN THE ROOT MAP
+                if ( field != null && !"_id".equals( field.getNameWithPath() )){
+                    field.setObjectId( (ObjectId)value );
+                }
+            } else if ( value instanceof Map ){
+                final MetaObject child = getObjectField( String.valueOf( key ));
+                if ( child != null ) child.collectObjectIds( (Map)value, level + 1 );
+            } else if ( value instanceof List && !((List)value).isEmpty() ){
+                final Object first = ((List)value).get( 0 );
+                if ( first instanceof ObjectId ){
+                    final MetaField field = getField( String.valueOf( key ));
+                    if ( field != null ) field.setObjectId( (ObjectId)first );
+                } else {
+                    final MetaObject child = getObjectField( String.valueOf( key ));
+                    if ( child != null ){
+                        for ( Object element : (List)value ){
+                            if ( element instanceof Map ) child.collectObjectIds( (Map)element, level + 1 );
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     private boolean isFirstDiscover = true;
 
-    private static final int DISCOVER_CHILD_CASCADE_DEEPNESS = 25;
+    static final int DISCOVER_CHILD_CASCADE_DEEPNESS = 25;
     protected void scanDocument(Object objDocument, boolean sortFields, int level ){
         if ( level < DISCOVER_CHILD_CASCADE_DEEPNESS && objDocument instanceof Map){
             Map document = (Map)objDocument;
@@ -208,11 +306,16 @@ public class MetaObject extends MetaField {
                     }
                 } else if ( value instanceof List){
                     final List<?> list = (List)value;
-                    final Class cls = Util.getListElementsClass(value);
+                    final int arraySampleSize = getArraySampleSize();
+                    final Class cls = Util.getListElementsClass(value, arraySampleSize );
+                    countSkippedElements( list.size(), arraySampleSize );
                     if ( cls == Map.class  ) {
                         final MetaObject subDocument = createArrayField(key.toString(), "array[object]", isFirstDiscover, sortFields  );
+                        int index = 0;
                         for ( Object child : list ){
-                            subDocument.scanDocument( child, sortFields, level+1);
+                            if ( Util.isSampledElement( index++, list.size(), arraySampleSize )){
+                                subDocument.scanDocument( child, sortFields, level+1);
+                            }
                         }
                     } else if ( cls == null || cls == Object.class ){
                         createField( (String)key, "array", 2003, isFirstDiscover, sortFields );
@@ -251,6 +354,279 @@ public class MetaObject extends MetaField {
         isFirstDiscover = false;
     }
 
+    /**
+     * Same as scanDocument(), but reading raw BSON. Only the key names and the value types are read, the values are skipped
+     * without being decoded, except the ObjectIds used to discover references. The reader has to be positioned on a document.
+     */
+    protected void scanRawDocument(BsonReader reader, boolean sortFields, int level ){
+        if ( level >= DISCOVER_CHILD_CASCADE_DEEPNESS ){
+            reader.skipValue();
+            isFirstDiscover = false;
+            return;
+        }
+        final Set<String> keys = new HashSet<>();
+        reader.readStartDocument();
+        while ( reader.readBsonType() != BsonType.END_OF_DOCUMENT ){
+            final String key = reader.readName();
+            keys.add( key );
+            final BsonType type = reader.getCurrentBsonType();
+            if ( type == BsonType.DOCUMENT ){
+                // "suburbs":[ { name: "Scarsdale" }, { name: "North Hills" } ] WOULD GENERATE SUB-ENTITIES 0,1,2,... FOR EACH LIST ENTRY. SKIP THIS
+                if ( allKeysAreNumbers( reader )){
+                    final MetaObject childrenMap = createArrayField( key, "array[int]", isFirstDiscover, sortFields );
+                    reader.readStartDocument();
+                    while ( reader.readBsonType() != BsonType.END_OF_DOCUMENT ){
+                        reader.skipName();
+                        childrenMap.scanRawValue( reader, sortFields, level+1 );
+                    }
+                    reader.readEndDocument();
+                } else {
+                    final MetaObject childrenMap = createObjectField( key, isFirstDiscover, sortFields );
+                    childrenMap.scanRawDocument( reader, sortFields, level+1 );
+                }
+            } else if ( type == BsonType.ARRAY ){
+                // FIRST PASS READS THE ELEMENT TYPES. THE ELEMENTS CLASS IS COMPUTED AS IN Util.getListElementsClass()
+                final BsonReaderMark mark = reader.getMark();
+                final List<BsonType> elementTypes = new ArrayList<>();
+                ObjectId firstObjectId = null;
+                reader.readStartArray();
+                while ( reader.readBsonType() != BsonType.END_OF_DOCUMENT ){
+                    final BsonType elementType = reader.getCurrentBsonType();
+                    if ( elementTypes.isEmpty() && elementType == BsonType.OBJECT_ID ){
+                        firstObjectId = reader.readObjectId();
+                    } else {
+                        reader.skipValue();
+                    }
+                    elementTypes.add( elementType );
+                }
+                reader.readEndArray();
+                final int arraySampleSize = getArraySampleSize();
+                countSkippedElements( elementTypes.size(), arraySampleSize );
+                final Class<?> cls = getSampledElementsClass( elementTypes, arraySampleSize );
+                if ( cls == Map.class ){
+                    mark.reset();
+                    final MetaObject subDocument = createArrayField( key, "array[object]", isFirstDiscover, sortFields );
+                    reader.readStartArray();
+                    int index = 0;
+                    while ( reader.readBsonType() != BsonType.END_OF_DOCUMENT ){
+                        if ( Util.isSampledElement( index++, elementTypes.size(), arraySampleSize )){
+                            subDocument.scanRawValue( reader, sortFields, level+1 );
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.readEndArray();
+                } else if ( cls == null || cls == Object.class ){
+                    createField( key, "array", 2003, isFirstDiscover, sortFields );
+                } else {
+                    final MetaField field = createField( key, "array[" + cls.getSimpleName().toLowerCase() + "]", 2003, isFirstDiscover, sortFields );
+                    field.setObjectId( firstObjectId );
+                }
+            } else {
+                MetaField field = getField( key );
+                if ( field == null ){
+                    field = createField( key, sortFields );
+                    field.setMandatory( isFirstDiscover );
+                }
+                if ( type == BsonType.OBJECT_ID ){
+                    final ObjectId objectId = reader.readObjectId();
+                    field.setTypeFromClass( ObjectId.class );
+                    // VALUES WHICH ARE OBJECTID AND ARE NOT _id IN THE ROOT MAP
+                    if ( !"_id".equals( field.getNameWithPath() ) ){
+                        field.setObjectId( objectId );
+                    }
+                } else {
+                    field.setTypeFromClass( getValueClass( type, type == BsonType.BINARY ? reader.peekBinarySubType() : 0 ));
+                    reader.skipValue();
+                }
+            }
+        }
+        reader.readEndDocument();
+        for ( MetaField field: fields){
+            if ( !keys.contains( field.name )){
+                field.setMandatory( false );
+            }
+        }
+        isFirstDiscover = false;
+    }
+
+    /**
+     * Used for documents with an already scanned DocumentShape, which have the same fields and types. Only the ObjectIds used
+     * to discover references and the array sizes are read, as scanRawDocument() would do. The reader has to be positioned on a document.
+     */
+    protected void scanRawSamples( BsonReader reader, int level ){
+        if ( level >= DISCOVER_CHILD_CASCADE_DEEPNESS ){
+            reader.skipValue();
+            return;
+        }
+        reader.readStartDocument();
+        while ( reader.readBsonType() != BsonType.END_OF_DOCUMENT ){
+            final String key = reader.readName();
+            final BsonType type = reader.getCurrentBsonType();
+            if ( type == BsonType.DOCUMENT ){
+                final MetaObject childrenMap = getObjectField( key );
+                if ( childrenMap == null ){
+                    reader.skipValue();
+                } else if ( allKeysAreNumbers( reader )){
+                    reader.readStartDocument();
+                    while ( reader.readBsonType() != BsonType.END_OF_DOCUMENT ){
+                        reader.skipName();
+                        childrenMap.scanRawSamplesOfValue( reader, level+1 );
+                    }
+                    reader.readEndDocument();
+                } else {
+                    childrenMap.scanRawSamples( reader, level+1 );
+                }
+            } else if ( type == BsonType.ARRAY ){
+                final BsonReaderMark mark = reader.getMark();
+                final List<BsonType> elementTypes = new ArrayList<>();
+                ObjectId firstObjectId = null;
+                reader.readStartArray();
+                while ( reader.readBsonType() != BsonType.END_OF_DOCUMENT ){
+                    final BsonType elementType = reader.getCurrentBsonType();
+                    if ( elementTypes.isEmpty() && elementType == BsonType.OBJECT_ID ){
+                        firstObjectId = reader.readObjectId();
+                    } else {
+                        reader.skipValue();
+                    }
+                    elementTypes.add( elementType );
+                }
+                reader.readEndArray();
+                final int arraySampleSize = getArraySampleSize();
+                countSkippedElements( elementTypes.size(), arraySampleSize );
+                final Class<?> cls = getSampledElementsClass( elementTypes, arraySampleSize );
+                final MetaObject subDocument = cls == Map.class ? getObjectField( key ) : null;
+                if ( subDocument != null ){
+                    mark.reset();
+                    reader.readStartArray();
+                    int index = 0;
+                    while ( reader.readBsonType() != BsonType.END_OF_DOCUMENT ){
+                        if ( Util.isSampledElement( index++, elementTypes.size(), arraySampleSize )){
+                            subDocument.scanRawSamplesOfValue( reader, level+1 );
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.readEndArray();
+                } else if ( cls == ObjectId.class ){
+                    final MetaField field = getField( key );
+                    if ( field != null ) field.setObjectId( firstObjectId );
+                }
+            } else if ( type == BsonType.OBJECT_ID ){
+                final MetaField field = getField( key );
+                final ObjectId objectId = reader.readObjectId();
+                if ( field != null && !"_id".equals( field.getNameWithPath() ) ){
+                    field.setObjectId( objectId );
+                }
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+    }
+
+    private void scanRawSamplesOfValue( BsonReader reader, int level ){
+        if ( reader.getCurrentBsonType() == BsonType.DOCUMENT ){
+            scanRawSamples( reader, level );
+        } else {
+            reader.skipValue();
+        }
+    }
+
+    private int getArraySampleSize(){
+        final MetaCollection metaCollection = getMetaCollection();
+        return metaCollection != null ? metaCollection.arraySampleSize : 0;
+    }
+
+    private void countSkippedElements( int size, int arraySampleSize ){
+        final MetaCollection metaCollection = getMetaCollection();
+        if ( metaCollection != null && arraySampleSize > 0 && size > 3 * arraySampleSize ){
+            // AS IN Util.isSampledElement()
+            final int middle = size - 2 * arraySampleSize;
+            final int stride = ( middle + arraySampleSize - 1 ) / arraySampleSize;
+            metaCollection.skippedArrayElements += middle - ( middle + stride - 1 ) / stride;
+        }
+    }
+
+    // AS scanDocument() CALLED FOR A VALUE WHICH MAY NOT BE A DOCUMENT
+    private void scanRawValue(BsonReader reader, boolean sortFields, int level ){
+        if ( reader.getCurrentBsonType() == BsonType.DOCUMENT ){
+            scanRawDocument( reader, sortFields, level );
+        } else {
+            reader.skipValue();
+            isFirstDiscover = false;
+        }
+    }
+
+    private static boolean allKeysAreNumbers( BsonReader reader ){
+        final BsonReaderMark mark = reader.getMark();
+        boolean isEmpty = true, allNumbers = true;
+        reader.readStartDocument();
+        while ( allNumbers && reader.readBsonType() != BsonType.END_OF_DOCUMENT ){
+            isEmpty = false;
+            allNumbers = Util.isNumber( reader.readName() );
+            reader.skipValue();
+        }
+        mark.reset();
+        return !isEmpty && allNumbers;
+    }
+
+    // AS Util.getListElementsClass() FOR THE SAMPLED ELEMENTS
+    private static Class<?> getSampledElementsClass( List<BsonType> elementTypes, int arraySampleSize ){
+        Class<?> cls = null;
+        for ( int i = 0; i < elementTypes.size(); i++ ){
+            if ( !Util.isSampledElement( i, elementTypes.size(), arraySampleSize )) continue;
+            final Class<?> _cls = getListElementClass( elementTypes.get(i) );
+            if ( cls == null ) cls = _cls;
+            else if ( cls != _cls ) cls = Object.class;
+        }
+        return cls;
+    }
+
+    // THE CLASSES CONSIDERED BY Util.getListElementsClass()
+    private static Class<?> getListElementClass( BsonType type ){
+        switch ( type ){
+            case DOCUMENT: return Map.class;
+            case INT32: return Integer.class;
+            case DOUBLE: return Double.class;
+            case INT64: return Long.class;
+            case BOOLEAN: return Boolean.class;
+            case DATE_TIME: return Date.class;
+            case STRING: return String.class;
+            case OBJECT_ID: return ObjectId.class;
+            default: return null;
+        }
+    }
+
+    /**
+     * The class used by the Java driver DocumentCodec to decode a value of the given type, or null for null values.
+     */
+    static Class<?> getValueClass( BsonType type, byte binarySubType ){
+        switch ( type ){
+            case DOUBLE: return Double.class;
+            case STRING: return String.class;
+            case DOCUMENT: return Document.class;
+            case ARRAY: return List.class;
+            case BINARY: return binarySubType == BsonBinarySubType.UUID_STANDARD.getValue() ? UUID.class : Binary.class;
+            case UNDEFINED: return BsonUndefined.class;
+            case OBJECT_ID: return ObjectId.class;
+            case BOOLEAN: return Boolean.class;
+            case DATE_TIME: return Date.class;
+            case REGULAR_EXPRESSION: return BsonRegularExpression.class;
+            case DB_POINTER: return BsonDbPointer.class;
+            case JAVASCRIPT: return Code.class;
+            case SYMBOL: return Symbol.class;
+            case JAVASCRIPT_WITH_SCOPE: return CodeWithScope.class;
+            case INT32: return Integer.class;
+            case TIMESTAMP: return BsonTimestamp.class;
+            case INT64: return Long.class;
+            case DECIMAL128: return Decimal128.class;
+            case MIN_KEY: return MinKey.class;
+            case MAX_KEY: return MaxKey.class;
+            default: return null;
+        }
+    }
+
     public MetaCollection getMetaCollection(){
         MetaObject _obj = this;
         do {
@@ -264,7 +640,7 @@ public class MetaObject extends MetaField {
 
     public int getFieldCount(){
         int count = 0;
-        for ( MetaField field : fields ){
+        for ( MetaField field : getFields() ){
             count += field.getFieldCount();
         }
         return count;
@@ -0,0 +1,322 @@
+package com.wisecoders.dbschema.mongodb.structure;
+
+import com.wisecoders.dbschema.mongodb.Util;
+import com.wisecoders.dbschema.mongodb.wrappers.WrappedMongoCollection;
+import org.bson.BsonBinarySubType;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+
+import java.util.*;
+
+/**
+ * Deduce the collection structure on the server. The aggregation converts each document in key-value pairs using $objectToArray
+ * and groups them by key and $type, so only the field names, types and counts are transferred instead of the documents.
+ * Each nesting level requires one aggregation, which reads the documents selected by the same source stages.
+ * Sources with $sample are first resolved to the sampled _id values, so all levels read the same documents.
+ * Objects are expanded also as array elements. Arrays nested directly in arrays are not expanded.
+ * Only small values are grouped: one ObjectId per field, and the binary values of 16 bytes, to read the UUID subtype.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+public class SchemaAggregation {
+
+    private static final String ROOT = "";
+
+    // THE BSON TYPE FOR EACH $type ALIAS
+    private static final Map<String, BsonType> BSON_TYPES = new HashMap<>();
+    // THE TYPE NAMES USED BY MetaObject.scanDocument() FOR ARRAYS WITH ELEMENTS OF THE SAME TYPE
+    private static final Map<String, String> ARRAY_ELEMENT_TYPES = new HashMap<>();
+
+    static {
+        BSON_TYPES.put("double", BsonType.DOUBLE);
+        BSON_TYPES.put("string", BsonType.STRING);
+        BSON_TYPES.put("binData", BsonType.BINARY);
+        BSON_TYPES.put("undefined", BsonType.UNDEFINED);
+        BSON_TYPES.put("objectId", BsonType.OBJECT_ID);
+        BSON_TYPES.put("bool", BsonType.BOOLEAN);
+        BSON_TYPES.put("date", BsonType.DATE_TIME);
+        BSON_TYPES.put("regex", BsonType.REGULAR_EXPRESSION);
+        BSON_TYPES.put("dbPointer", BsonType.DB_POINTER);
+        BSON_TYPES.put("javascript", BsonType.JAVASCRIPT);
+        BSON_TYPES.put("symbol", BsonType.SYMBOL);
+        BSON_TYPES.put("javascriptWithScope", BsonType.JAVASCRIPT_WITH_SCOPE);
+        BSON_TYPES.put("int", BsonType.INT32);
+        BSON_TYPES.put("timestamp", BsonType.TIMESTAMP);
+        BSON_TYPES.put("long", BsonType.INT64);
+        BSON_TYPES.put("decimal", BsonType.DECIMAL128);
+        BSON_TYPES.put("minKey", BsonType.MIN_KEY);
+        BSON_TYPES.put("maxKey", BsonType.MAX_KEY);
+
+        ARRAY_ELEMENT_TYPES.put("int", "integer");
+        ARRAY_ELEMENT_TYPES.put("double", "double");
+        ARRAY_ELEMENT_TYPES.put("long", "long");
+        ARRAY_ELEMENT_TYPES.put("bool", "boolean");
+        ARRAY_ELEMENT_TYPES.put("date", "date");
+        ARRAY_ELEMENT_TYPES.put("string", "string");
+        ARRAY_ELEMENT_TYPES.put("objectId", "objectid");
+    }
+
+    private static class FieldStats {
+        final String parent, name;
+        final Set<String> types = new LinkedHashSet<>();
+        final Set<String> elementTypes = new LinkedHashSet<>();
+        long count = 0, objects = 0, position = Long.MAX_VALUE;
+        ObjectId objectId;
+        byte binarySubType = 0;
+
+        FieldStats( String parent, String name ){
+            this.parent = parent;
+            this.name = name;
+        }
+
+        String getPath(){
+            return ROOT.equals( parent ) ? name : parent + "." + name;
+        }
+
+        // FIELD NAMES WITH '.' OR '$' CANNOT BE USED IN AGGREGATION FIELD PATHS
+        boolean canExpand(){
+            return objects > 0 && name.indexOf('.') < 0 && !name.startsWith("$");
+        }
+    }
+
+    private final Map<String, FieldStats> stats = new LinkedHashMap<>();
+
+    /**
+     * Run the aggregations for each source. A source is a list of stages selecting the documents to scan, for example a $sample.
+     */
+    public void scan( WrappedMongoCollection mongoCollection, List<List<Document>> sources ){
+        for ( List<Document> sampledSource : sources ){
+            final List<Document> source = resolveSample( mongoCollection, sampledSource );
+            List<String> parents = Collections.singletonList( ROOT );
+            for ( int level = 0; !parents.isEmpty() && level < MetaObject.DISCOVER_CHILD_CASCADE_DEEPNESS; level++ ){
+                final Set<String> nextParents = new LinkedHashSet<>();
+                for ( Object row : mongoCollection.aggregate( createPipeline( source, parents )).allowDiskUse( true )){
+                    final FieldStats fieldStats = addGroupResult( (Document)row );
+                    if ( fieldStats.canExpand() ){
+                        nextParents.add( fieldStats.getPath() );
+                    }
+                }
+                parents = new ArrayList<>( nextParents );
+            }
+        }
+    }
+
+    static boolean isSample( List<Document> source ){
+        for ( Document stage : source ){
+            if ( stage.containsKey("$sample")) return true;
+        }
+        return false;
+    }
+
+    // $sample SELECTS OTHER DOCUMENTS ON EACH RUN, SO THE CHILD FIELDS WOULD BE COUNTED IN OTHER DOCUMENTS THAN THE PARENTS
+    private static List<Document> resolveSample( WrappedMongoCollection mongoCollection, List<Document> source ){
+        if ( !isSample( source )){
+            return source;
+        }
+        final List<Document> pipeline = new ArrayList<>( source );
+        pipeline.add( new Document("$project", new Document("_id", 1 )));
+        final List<Object> ids = new ArrayList<>();
+        for ( Object row : mongoCollection.aggregate( pipeline )){
+            ids.add( ((Document)row).get("_id"));
+        }
+        return Collections.singletonList( new Document("$match", new Document("_id", new Document("$in", ids ))));
+    }
+
+    static List<Document> createPipeline( List<Document> source, List<String> parents ){
+        final List<Document> pipeline = new ArrayList<>( source );
+        final List<Object> keyValues = new ArrayList<>();
+        for ( String parent : parents ){
+            final Object objects = ROOT.equals( parent ) ? Collections.singletonList("$$ROOT") : objectsOf( "$" + parent );
+            keyValues.add( new Document("$reduce", new Document("input", objects )
+                    .append("initialValue", Collections.emptyList())
+                    .append("in", new Document("$concatArrays", Arrays.asList( "$$value", keyValuesOfThis( parent ))))));
+        }
+        pipeline.add( new Document("$project", new Document("_id", 0 ).append("kv", new Document("$concatArrays", keyValues ))));
+        pipeline.add( new Document("$unwind", "$kv"));
+        final Document valueType = new Document("$type", "$kv.v");
+        final Document isArray = new Document("$isArray", "$kv.v");
+        pipeline.add( new Document("$group", new Document("_id", new Document("p", "$kv.p")
+                    .append("k", "$kv.k")
+                    .append("t", valueType )
+                    .append("e", cond( isArray, new Document("$setUnion", Collections.singletonList(
+                            new Document("$map", new Document("input", "$kv.v").append("in", new Document("$type", "$$this"))))), null )))
+                .append("count", new Document("$sum", 1 ))
+                .append("objects", new Document("$sum", cond( isObject( "$kv.v"), 1,
+                        cond( isArray, new Document("$size", filterObjects("$kv.v")), 0 ))))
+                .append("pos", new Document("$min", "$kv.i"))
+                // $max IGNORES THE null VALUES
+                .append("oid", new Document("$max", cond( isObjectId( valueType ), "$kv.v",
+                        cond( isArray, new Document("$let", new Document("vars", new Document("first", new Document("$arrayElemAt", Arrays.asList( "$kv.v", 0 ))))
+                                .append("in", cond( isObjectId( new Document("$type", "$$first")), "$$first", null ))), null ))))
+                // THERE IS NO OPERATOR RETURNING THE BINARY SUBTYPE. ONLY VALUES WITH THE UUID LENGTH ARE GROUPED, TO READ THEIR SUBTYPE
+                .append("bin", new Document("$max", cond( new Document("$eq", Arrays.asList( valueType, "binData")),
+                        cond( new Document("$eq", Arrays.asList( new Document("$binarySize", "$kv.v"), 16 )), "$kv.v", null ), null )))));
+        return pipeline;
+    }
+
+    private static Document isObjectId( Object type ){
+        return new Document("$eq", Arrays.asList( type, "objectId"));
+    }
+
+    // THE OBJECT, OR THE OBJECTS FROM THE ARRAY
+    private static Object objectsOf( String expression ){
+        return cond( isObject( expression ), Collections.singletonList( expression ),
+                cond( new Document("$isArray", expression ), filterObjects( expression ), Collections.emptyList() ));
+    }
+
+    // FOR THE OBJECT $$this RETURN [{ p: parent, i: index, k: key, v: value },...]
+    private static Document keyValuesOfThis( String parent ){
+        return new Document("$let", new Document("vars", new Document("kv", new Document("$objectToArray", "$$this")))
+                .append("in", new Document("$map", new Document("input", new Document("$range", Arrays.asList( 0, new Document("$size", "$$kv"))))
+                        .append("as", "i")
+                        .append("in", new Document("p", new Document("$literal", parent ))
+                                .append("i", "$$i")
+                                .append("k", new Document("$arrayElemAt", Arrays.asList( "$$kv.k", "$$i")))
+                                .append("v", new Document("$arrayElemAt", Arrays.asList( "$$kv.v", "$$i")))))));
+    }
+
+    private static Document filterObjects( String expression ){
+        return new Document("$filter", new Document("input", expression ).append("cond", isObject("$$this")));
+    }
+
+    private static Document isObject( String expression ){
+        return new Document("$eq", Arrays.asList( new Document("$type", expression ), "object"));
+    }
+
+    private static Document cond( Object condition, Object then, Object otherwise ){
+        return new Document("$cond", Arrays.asList( condition, then, otherwise ));
+    }
+
+    FieldStats addGroupResult( Document row ){
+        final Document id = (Document)row.get("_id");
+        final String parent = id.getString("p");
+        final String name = id.getString("k");
+        final FieldStats fieldStats = stats.computeIfAbsent( ROOT.equals( parent ) ? name : parent + "." + name, path -> new FieldStats( parent, name ));
+        fieldStats.types.add( id.getString("t"));
+        final Object elementTypes = id.get("e");
+        if ( elementTypes instanceof List ){
+            for ( Object elementType : (List)elementTypes ){
+                fieldStats.elementTypes.add( String.valueOf( elementType ));
+            }
+        }
+        fieldStats.count += ((Number)row.get("count")).longValue();
+        fieldStats.objects += ((Number)row.get("objects")).longValue();
+        if ( row.get("pos") instanceof Number ){
+            fieldStats.position = Math.min( fieldStats.position, ((Number)row.get("pos")).longValue() );
+        }
+        if ( fieldStats.objectId == null && row.get("oid") instanceof ObjectId ){
+            fieldStats.objectId = (ObjectId)row.get("oid");
+        }
+        final Object binary = row.get("bin");
+        if ( binary instanceof UUID ){
+            fieldStats.binarySubType = BsonBinarySubType.UUID_STANDARD.getValue();
+        } else if ( binary instanceof Binary && fieldStats.binarySubType == 0 ){
+            fieldStats.binarySubType = ((Binary)binary).getType();
+        }
+        return fieldStats;
+    }
+
+    /**
+     * The number of scanned documents, all having an _id.
+     */
+    public long getDocumentCount(){
+        final FieldStats idStats = stats.get("_id");
+        return idStats != null ? idStats.count : 0;
+    }
+
+    /**
+     * Create the fields as MetaObject.scanDocument() would do. A field is mandatory if it is present in all scanned parent objects.
+     */
+    public void apply( MetaCollection metaCollection, boolean sortFields ){
+        final Map<String, List<FieldStats>> children = new HashMap<>();
+        for ( FieldStats fieldStats : stats.values() ){
+            children.computeIfAbsent( fieldStats.parent, parent -> new ArrayList<>() ).add( fieldStats );
+        }
+        for ( List<FieldStats> list : children.values() ){
+            list.sort( Comparator.comparingLong( fieldStats -> fieldStats.position ));
+        }
+        apply( metaCollection, ROOT, getDocumentCount(), children, sortFields );
+    }
+
+    private void apply( MetaObject into, String parent, long parentCount, Map<String, List<FieldStats>> children, boolean sortFields ){
+        final List<FieldStats> list = children.get( parent );
+        if ( list == null ) return;
+        for ( FieldStats fieldStats : list ){
+            final boolean mandatory = fieldStats.count >= parentCount;
+            final List<FieldStats> numberedChildren = getNumberedChildren( fieldStats, children );
+            if ( numberedChildren != null ){
+                // AS scanDocument(), OBJECTS WITH NUMBERS AS KEYS ARE ARRAYS, WITH THE FIELDS OF THE VALUES
+                final MetaObject child = into.createArrayField( fieldStats.name, "array[int]", mandatory, sortFields );
+                for ( FieldStats element : numberedChildren ){
+                    if ( element.types.contains("object")){
+                        apply( child, element.getPath(), element.objects, children, sortFields );
+                    }
+                }
+                for ( MetaField field : child.fields ){
+                    for ( FieldStats element : numberedChildren ){
+                        if ( !containsChild( children, element.getPath(), field.name )){
+                            field.setMandatory( false );
+                        }
+                    }
+                }
+            } else if ( fieldStats.types.contains("object")){
+                final MetaObject child = into.createObjectField( fieldStats.name, mandatory, sortFields );
+                apply( child, fieldStats.getPath(), fieldStats.objects, children, sortFields );
+            } else if ( fieldStats.types.contains("array")){
+                final Set<String> elementTypes = new HashSet<>( fieldStats.elementTypes );
+                elementTypes.remove("null");
+                final String elementType = elementTypes.size() == 1 ? elementTypes.iterator().next() : null;
+                if ( "object".equals( elementType )){
+                    final MetaObject child = into.createArrayField( fieldStats.name, "array[object]", mandatory, sortFields );
+                    apply( child, fieldStats.getPath(), fieldStats.objects, children, sortFields );
+                } else {
+                    final String arrayType = ARRAY_ELEMENT_TYPES.get( elementType );
+                    final MetaField field = into.createField( fieldStats.name, arrayType != null ? "array[" + arrayType + "]" : "array", 2003, mandatory, sortFields );
+                    if ( "objectId".equals( elementType )){
+                        field.setObjectId( fieldStats.objectId );
+                    }
+                }
+            } else {
+                MetaField field = into.getField( fieldStats.name );
+                if ( field == null ){
+                    field = into.createField( fieldStats.name, sortFields );
+                    field.setMandatory( mandatory );
+                } else if ( !mandatory ){
+                    field.setMandatory( false );
+                }
+                for ( String type : fieldStats.types ){
+                    final BsonType bsonType = BSON_TYPES.get( type );
+                    if ( bsonType != null ){
+                        field.setTypeFromClass( MetaObject.getValueClass( bsonType, fieldStats.binarySubType ));
+                    }
+                }
+                if ( !"_id".equals( field.getNameWithPath() )){
+                    field.setObjectId( fieldStats.objectId );
+                }
+            }
+        }
+    }
+
+    // THE CHILDREN IF THE FIELD IS AN OBJECT WITH ONLY NUMBERS AS KEYS, OTHERWISE NULL
+    private static List<FieldStats> getNumberedChildren( FieldStats fieldStats, Map<String, List<FieldStats>> children ){
+        final List<FieldStats> list = fieldStats.types.contains("object") ? children.get( fieldStats.getPath() ) : null;
+        if ( list == null || list.isEmpty() ) return null;
+        for ( FieldStats child : list ){
+            if ( !Util.isNumber( child.name )) return null;
+        }
+        return list;
+    }
+
+    private static boolean containsChild( Map<String, List<FieldStats>> children, String parent, String name ){
+        final List<FieldStats> list = children.get( parent );
+        if ( list != null ){
+            for ( FieldStats child : list ){
+                if ( child.name.equals( name )) return true;
+            }
+        }
+        return false;
+    }
+}
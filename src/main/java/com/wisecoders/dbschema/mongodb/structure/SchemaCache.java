@@ -0,0 +1,214 @@
+package com.wisecoders.dbschema.mongodb.structure;
+
+import com.wisecoders.dbschema.mongodb.Util;
+import org.bson.BsonBinarySubType;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+
+import static com.wisecoders.dbschema.mongodb.JdbcDriver.LOGGER;
+
+/**
+ * Disk cache for the deduced collection structure, so a new connection doesn't have to scan again the collections.
+ * There is one JSON file for each collection, in a folder named by the hash of the connection URI and the database name.
+ * The cached structure is used only if the collection signature did not change: the validator, the indexes and,
+ * within a tolerance of 10%, the estimated document count.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+public class SchemaCache {
+
+    private static final int VERSION = 1;
+    private static final double DOCUMENT_COUNT_TOLERANCE = 0.1;
+    // THE FIELD TYPE CLASSES WHICH MAY BE READ FROM THE CACHE: THE VALUE CLASSES OF THE SCAN, AND Object FOR MIXED TYPES
+    private static final Map<String, Class<?>> TYPE_CLASSES = new HashMap<>();
+
+    static {
+        for ( BsonType type : BsonType.values() ){
+            addTypeClass( MetaObject.getValueClass( type, (byte)0 ));
+        }
+        addTypeClass( MetaObject.getValueClass( BsonType.BINARY, BsonBinarySubType.UUID_STANDARD.getValue() ));
+        addTypeClass( Object.class );
+    }
+
+    private static void addTypeClass( Class<?> cls ){
+        if ( cls != null ){
+            TYPE_CLASSES.put( cls.getName(), cls );
+        }
+    }
+
+    public static class Signature {
+        final String validator, indexes;
+        final long documentCount;
+
+        public Signature( String validator, String indexes, long documentCount ){
+            this.validator = Util.sha256( validator );
+            this.indexes = Util.sha256( indexes );
+            this.documentCount = documentCount;
+        }
+
+        private Signature( Document document ){
+            this.validator = document.getString("validator");
+            this.indexes = document.getString("indexes");
+            this.documentCount = ((Number)document.get("documentCount")).longValue();
+        }
+
+        private Document toDocument(){
+            return new Document("validator", validator ).append("indexes", indexes ).append("documentCount", documentCount );
+        }
+
+        boolean matches( Signature cached ){
+            return Objects.equals( validator, cached.validator ) && Objects.equals( indexes, cached.indexes ) &&
+                    Math.abs( documentCount - cached.documentCount ) <= Math.max( documentCount, cached.documentCount ) * DOCUMENT_COUNT_TOLERANCE;
+        }
+    }
+
+    private final File directory;
+
+    public SchemaCache( File baseDirectory, String uri ){
+        // THE URI MAY CONTAIN THE PASSWORD, SO WE USE ONLY ITS HASH
+        this.directory = new File( baseDirectory, Util.sha256( uri ).substring( 0, 32 ));
+    }
+
+    private File getFile( String databaseName, String collectionName ){
+        return new File( new File( directory, encode( databaseName )), encode( collectionName ) + ".json");
+    }
+
+    private static String encode( String name ){
+        return URLEncoder.encode( name, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Read the collection from the cache. The collection is not added to the metaDatabase. Return null if the collection is not cached or the signature changed.
+     */
+    public MetaCollection load( MetaDatabase metaDatabase, String collectionName, Signature signature ){
+        final File file = getFile( metaDatabase.name, collectionName );
+        if ( !file.exists() ){
+            return null;
+        }
+        try {
+            final Document document = Document.parse( new String( Files.readAllBytes( file.toPath() ), StandardCharsets.UTF_8 ));
+            // ON CASE-INSENSITIVE FILE SYSTEMS TWO COLLECTIONS MAY USE THE SAME FILE
+            if ( document.getInteger("version", 0 ) != VERSION || !collectionName.equals( document.getString("name"))){
+                return null;
+            }
+            if ( !signature.matches( new Signature( document.get("signature", Document.class )))){
+                LOGGER.info("Schema cache for " + metaDatabase.name + "." + collectionName + " is outdated.");
+                return null;
+            }
+            final MetaCollection metaCollection = new MetaCollection( metaDatabase, collectionName, true );
+            readFields( metaCollection, document.getList("fields", Document.class ));
+            metaCollection.metaIndexes.clear();
+            for ( Document indexDocument : document.getList("indexes", Document.class )){
+                final MetaIndex metaIndex = metaCollection.createMetaIndex( indexDocument.getString("name"), indexDocument.getBoolean("pk"), indexDocument.getBoolean("unique"));
+                for ( String fieldName : indexDocument.getList("fields", String.class )){
+                    metaIndex.addColumn( metaCollection.findField( fieldName ));
+                }
+            }
+            LOGGER.info("Loaded " + metaDatabase.name + "." + collectionName + " from schema cache.");
+            return metaCollection;
+        } catch ( Throwable ex ){
+            LOGGER.log( Level.WARNING, "Error reading schema cache " + file, ex );
+        }
+        return null;
+    }
+
+    public void save( MetaCollection metaCollection, Signature signature ){
+        final File file = getFile( metaCollection.metaDatabase.name, metaCollection.name );
+        final Document document = new Document("version", VERSION )
+                .append("name", metaCollection.name )
+                .append("signature", signature.toDocument() )
+                .append("fields", writeFields( metaCollection ));
+        final List<Document> indexes = new ArrayList<>();
+        for ( MetaIndex metaIndex : metaCollection.metaIndexes ){
+            final List<String> fieldNames = new ArrayList<>();
+            for ( MetaField metaField : metaIndex.metaFields ){
+                fieldNames.add( metaField.getNameWithPath() );
+            }
+            indexes.add( new Document("name", metaIndex.name ).append("pk", metaIndex.pk ).append("unique", metaIndex.unique ).append("fields", fieldNames ));
+        }
+        document.append("indexes", indexes );
+        try {
+            Files.createDirectories( file.getParentFile().toPath() );
+            // WRITE A TEMPORARY FILE FIRST, SO OTHER CONNECTIONS NEVER READ A PARTIAL FILE
+            final File tempFile = File.createTempFile( "schema", ".tmp", file.getParentFile() );
+            Files.write( tempFile.toPath(), document.toJson().getBytes( StandardCharsets.UTF_8 ));
+            Files.move( tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        } catch ( IOException ex ){
+            LOGGER.log( Level.WARNING, "Error writing schema cache " + file, ex );
+        }
+    }
+
+    private static List<Document> writeFields( MetaObject metaObject ){
+        final List<Document> list = new ArrayList<>();
+        for ( MetaField field : metaObject.fields ){
+            final Document document = new Document("name", field.name )
+                    .append("typeName", field.typeName )
+                    .append("typeClass", field.typeClass != null ? field.typeClass.getName() : null )
+                    .append("javaType", field.javaType )
+                    .append("mandatory", field.isMandatory() )
+                    .append("objectId", field.objectId )
+                    .append("options", field.options )
+                    .append("description", field.getDescription() );
+            if ( field instanceof MetaObject ){
+                document.append("fields", writeFields( (MetaObject)field ));
+            }
+            list.add( document );
+        }
+        return list;
+    }
+
+    private static void readFields( MetaObject metaObject, List<Document> list ){
+        for ( Document document : list ){
+            final String name = document.getString("name");
+            final boolean isObject = document.containsKey("fields");
+            MetaField field = getField( metaObject, name, isObject );
+            if ( field == null ){
+                field = isObject ? new MetaObject( metaObject, name ) : new MetaField( metaObject, name );
+                metaObject.addField( field );
+            }
+            field.typeName = document.getString("typeName");
+            field.typeClass = getClass( document.getString("typeClass"));
+            field.javaType = document.getInteger("javaType");
+            field.setMandatory( document.getBoolean("mandatory"));
+            field.setObjectId( document.get("objectId", ObjectId.class ));
+            field.options = document.getString("options");
+            field.setDescription( document.getString("description"));
+            if ( field instanceof MetaObject ){
+                readFields( (MetaObject)field, document.getList("fields", Document.class ));
+            }
+        }
+    }
+
+    // A VALUE FIELD AND AN OBJECT FIELD MAY HAVE THE SAME NAME, SO AN EXISTING FIELD IS USED ONLY IF IT IS OF THE SAME KIND
+    private static MetaField getField( MetaObject metaObject, String name, boolean isObject ){
+        final MetaField field = metaObject.getField( name );
+        if ( field == null || ( field instanceof MetaObject ) == isObject ){
+            return field;
+        }
+        for ( MetaField other : metaObject.fields ){
+            if ( other.name.equals( name ) && ( other instanceof MetaObject ) == isObject ) return other;
+        }
+        return null;
+    }
+
+    // THE CLASS IS NOT LOADED BY NAME, SO A MODIFIED CACHE FILE CANNOT INITIALIZE OTHER CLASSES
+    private static Class<?> getClass( String className ){
+        if ( className == null ) return null;
+        return TYPE_CLASSES.getOrDefault( className, Object.class );
+    }
+}
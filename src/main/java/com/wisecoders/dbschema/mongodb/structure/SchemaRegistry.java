@@ -0,0 +1,57 @@
+package com.wisecoders.dbschema.mongodb.structure;
+
+import com.wisecoders.dbschema.mongodb.Util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM-wide registry of the deduced structures, used with sharedSchema=true. All connections to the same URI and database
+ * share one MetaDatabase, so pooled connections scan each collection only once. The collection discovery itself is
+ * single-flight in MetaDatabase.discoverMetaCollection(): a connection asking for a collection being scanned waits for that scan.
+ * The entries are counted by connection and removed when the last connection using them is closed.
+ * MongoConnection.refreshSchema() forgets the structure for all connections sharing it.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+public class SchemaRegistry {
+
+    private static class Entry {
+        final MetaDatabase metaDatabase;
+        int references = 0;
+
+        Entry( MetaDatabase metaDatabase ){
+            this.metaDatabase = metaDatabase;
+        }
+    }
+
+    private static final Map<String, Entry> entries = new HashMap<>();
+
+    private SchemaRegistry(){}
+
+    // THE URI MAY CONTAIN THE PASSWORD, SO WE KEEP ONLY ITS HASH
+    private static String getKey( String uri, String databaseName ){
+        return Util.sha256( uri ) + "/" + databaseName;
+    }
+
+    /**
+     * Get the shared MetaDatabase. Each call has to be paired with releaseMetaDatabase() when the connection is closed.
+     */
+    public static synchronized MetaDatabase acquireMetaDatabase( String uri, String databaseName ){
+        final Entry entry = entries.computeIfAbsent( getKey( uri, databaseName ), key -> new Entry( new MetaDatabase( databaseName )));
+        entry.references++;
+        return entry.metaDatabase;
+    }
+
+    /**
+     * The last release removes the entry, so the next connection scans the collections again.
+     */
+    public static synchronized void releaseMetaDatabase( String uri, String databaseName ){
+        final String key = getKey( uri, databaseName );
+        final Entry entry = entries.get( key );
+        if ( entry != null && --entry.references <= 0 ){
+            entries.remove( key );
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.wisecoders.dbschema.mongodb.wrappers;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.wisecoders.dbschema.mongodb.structure.MetaCollection;
+import com.wisecoders.dbschema.mongodb.structure.MetaDatabase;
+import org.bson.BsonDocument;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import static com.wisecoders.dbschema.mongodb.JdbcDriver.LOGGER;
+
+/**
+ * Keep the structure of the already discovered collections up to date using a database change stream.
+ * Inserted, replaced and updated documents are scanned like the documents from the first scan, so new fields are added
+ * and fields missing in a document become optional. Index changes reload the collection indexes ( requires MongoDB 6.0, older
+ * servers are watched without index events ). If the resume point is no longer in the oplog, the watcher restarts from the current time.
+ * Change streams require a replica set or a sharded cluster. On standalone servers the watcher logs the error and stops.
+ * There is one watcher for each MetaDatabase, so with sharedSchema=true all connections share one change stream. The watcher
+ * reads using the first watching connection. If this is closed, a new watcher resumes the stream using the next connection.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+class SchemaWatcher implements Runnable {
+
+    private static final long RETRY_DELAY_MS = 5000;
+    private static final int UNKNOWN_FIELD_ERROR = 40415;
+    private static final int CHANGE_STREAM_HISTORY_LOST_ERROR = 286;
+
+    // THE WATCHER AND THE CONNECTIONS WATCHING EACH MetaDatabase. GUARDED BY THE CLASS LOCK
+    private static final Map<MetaDatabase, SchemaWatcher> watchers = new IdentityHashMap<>();
+    private static final Map<MetaDatabase, List<WrappedMongoDatabase>> watchingDatabases = new IdentityHashMap<>();
+
+    private final WrappedMongoDatabase wrappedMongoDatabase;
+    private final MongoDatabase mongoDatabase;
+    private final MetaDatabase metaDatabase;
+    private final boolean sortFields;
+    private final Thread thread;
+    private volatile boolean closed = false;
+    // showExpandedEvents IS REJECTED BY SERVERS OLDER THAN 6.0
+    private boolean expandedEvents = true;
+    // READ BY THE NEXT WATCHER, IF THE CONNECTION OF THIS ONE IS CLOSED
+    private volatile BsonDocument resumeToken;
+
+    private SchemaWatcher( WrappedMongoDatabase wrappedMongoDatabase, boolean sortFields, BsonDocument resumeToken ){
+        this.wrappedMongoDatabase = wrappedMongoDatabase;
+        this.mongoDatabase = wrappedMongoDatabase.getMongoDatabase();
+        this.metaDatabase = wrappedMongoDatabase.metaDatabase;
+        this.sortFields = sortFields;
+        this.resumeToken = resumeToken;
+        this.thread = new Thread( this, "MongoDB schema watcher " + mongoDatabase.getName() );
+        this.thread.setDaemon( true );
+    }
+
+    /**
+     * Start watching the MetaDatabase of this connection, if it is not already watched by another connection.
+     */
+    static synchronized void watch( WrappedMongoDatabase wrappedMongoDatabase, boolean sortFields ){
+        final MetaDatabase metaDatabase = wrappedMongoDatabase.metaDatabase;
+        final List<WrappedMongoDatabase> databases = watchingDatabases.computeIfAbsent( metaDatabase, key -> new ArrayList<>());
+        if ( databases.contains( wrappedMongoDatabase )){
+            return;
+        }
+        databases.add( wrappedMongoDatabase );
+        if ( !watchers.containsKey( metaDatabase )){
+            start( new SchemaWatcher( wrappedMongoDatabase, sortFields, null ));
+        }
+    }
+
+    /**
+     * Called when the connection is closed. The last connection closes the change stream.
+     */
+    static synchronized void unwatch( WrappedMongoDatabase wrappedMongoDatabase ){
+        final MetaDatabase metaDatabase = wrappedMongoDatabase.metaDatabase;
+        final List<WrappedMongoDatabase> databases = watchingDatabases.get( metaDatabase );
+        if ( databases == null || !databases.remove( wrappedMongoDatabase )){
+            return;
+        }
+        final SchemaWatcher watcher = watchers.get( metaDatabase );
+        if ( databases.isEmpty() ){
+            watchingDatabases.remove( metaDatabase );
+            watchers.remove( metaDatabase );
+            watcher.close();
+        } else if ( watcher.wrappedMongoDatabase == wrappedMongoDatabase ){
+            watcher.close();
+            start( new SchemaWatcher( databases.get( 0 ), watcher.sortFields, watcher.resumeToken ));
+        }
+    }
+
+    private static void start( SchemaWatcher watcher ){
+        watchers.put( watcher.metaDatabase, watcher );
+        watcher.thread.start();
+    }
+
+    /**
+     * Interrupt the thread, so it doesn't wait for the change stream maxAwaitTime.
+     */
+    private void close(){
+        closed = true;
+        thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        LOGGER.info("Watch changes in database " + mongoDatabase.getName() );
+        while ( !closed ){
+            ChangeStreamIterable<Document> changeStream = mongoDatabase.watch()
+                    .fullDocument( FullDocument.UPDATE_LOOKUP )
+                    .maxAwaitTime( 1, TimeUnit.SECONDS );
+            if ( expandedEvents ){
+                changeStream = changeStream.showExpandedEvents( true );
+            }
+            if ( resumeToken != null ){
+                changeStream = changeStream.resumeAfter( resumeToken );
+            }
+            try ( MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = changeStream.cursor() ){
+                boolean invalidated = false;
+                while ( !closed && !invalidated ){
+                    final ChangeStreamDocument<Document> event = cursor.tryNext();
+                    if ( event != null ){
+                        invalidated = "invalidate".equals( event.getOperationTypeString() );
+                        apply( event );
+                    }
+                    resumeToken = invalidated ? null : cursor.getResumeToken();
+                }
+            } catch ( MongoCommandException ex ){
+                if ( closed ){
+                    return;
+                } else if ( expandedEvents && ex.getErrorCode() == UNKNOWN_FIELD_ERROR ){
+                    LOGGER.info("Watch changes in database " + mongoDatabase.getName() + " without index events. " + ex.getErrorMessage() );
+                    expandedEvents = false;
+                } else if ( resumeToken != null && ex.getErrorCode() == CHANGE_STREAM_HISTORY_LOST_ERROR ){
+                    LOGGER.log( Level.WARNING, "Changes in database " + mongoDatabase.getName() + " are no longer in the oplog, watching from now on. " + ex.getErrorMessage() );
+                    resumeToken = null;
+                } else {
+                    LOGGER.log( Level.WARNING, "Cannot watch changes in database " + mongoDatabase.getName() + ". " + ex.getErrorMessage() );
+                    return;
+                }
+            } catch ( MongoException ex ){
+                if ( closed ){
+                    return;
+                }
+                LOGGER.log( Level.INFO, "Watching changes in database " + mongoDatabase.getName() + " failed, retrying.", ex );
+                try {
+                    Thread.sleep( RETRY_DELAY_MS );
+                } catch ( InterruptedException ignore ){
+                    return;
+                }
+            } catch ( Throwable ex ){
+                LOGGER.log( Level.SEVERE, "Error watching changes in database " + mongoDatabase.getName(), ex );
+                return;
+            }
+        }
+    }
+
+    private void apply( ChangeStreamDocument<Document> event ){
+        if ( event.getNamespace() == null ){
+            return;
+        }
+        final String collectionName = event.getNamespace().getCollectionName();
+        final MetaCollection metaCollection = metaDatabase.getMetaCollection( collectionName );
+        // COLLECTIONS NOT DISCOVERED YET WILL BE SCANNED ON DEMAND. COLLECTIONS WITH VALIDATOR ARE DEFINED BY THE VALIDATOR.
+        if ( metaCollection == null || !metaCollection.isVirtual ){
+            return;
+        }
+        switch ( event.getOperationTypeString() ){
+            case "insert":
+            case "update":
+            case "replace":
+                if ( event.getFullDocument() != null ){
+                    metaCollection.scanChangedDocument( event.getFullDocument(), sortFields );
+                }
+                break;
+            case "createIndexes":
+            case "dropIndexes":
+                metaCollection.refreshIndexes( wrappedMongoDatabase.getCollection( collectionName ));
+                break;
+            case "drop":
+            case "rename":
+                metaDatabase.dropMetaCollection( collectionName );
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.wisecoders.dbschema.mongodb.wrappers;
+
+import com.mongodb.ExplainVerbosity;
+import com.mongodb.Function;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.Collation;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The aggregation is created on the server only when iterated, so the JDBC max rows can still be appended as a $limit stage
+ * and the statement knows if the query did set a maxTime.
+ *
+ * Copyright Wise Coders GmbH. The MongoDB JDBC driver is build to be used with  <a href="https://dbschema.com">DbSchema Database Designer</a>
+ * Free to use by everyone, code modifications allowed only to the  <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public repository</a>
+ */
+public class WrappedAggregateIterable<TResult> implements com.mongodb.client.MongoIterable<TResult> {
+
+    private final MongoCollection mongoCollection;
+    private final ClientSession clientSession;
+    private final List pipeline;
+    private final Class<TResult> resultClass;
+    private int limit = 0;
+    private long maxTimeMS = 0, maxAwaitTimeMS = 0;
+    private Integer batchSize;
+    private Boolean allowDiskUse, bypassDocumentValidation;
+    private Collation collation;
+    private String comment, hintString;
+    private Bson hint, variables;
+
+    WrappedAggregateIterable( MongoCollection mongoCollection, ClientSession clientSession, List pipeline, Class<TResult> resultClass ){
+        this.mongoCollection = mongoCollection;
+        this.clientSession = clientSession;
+        this.pipeline = pipeline;
+        this.resultClass = resultClass != null ? resultClass : mongoCollection.getDocumentClass();
+    }
+
+    private AggregateIterable<TResult> createAggregateIterable(){
+        final List<Object> stages = new ArrayList<>( pipeline );
+        if ( limit > 0 && !writesOutput() ){
+            stages.add( new Document("$limit", limit ));
+        }
+        final AggregateIterable<TResult> iterable = clientSession != null ?
+                mongoCollection.aggregate( clientSession, stages, resultClass ) :
+                mongoCollection.aggregate( stages, resultClass );
+        if ( allowDiskUse != null ) iterable.allowDiskUse( allowDiskUse );
+        if ( batchSize != null ) iterable.batchSize( batchSize );
+        if ( maxTimeMS > 0 ) iterable.maxTime( maxTimeMS, TimeUnit.MILLISECONDS );
+        if ( maxAwaitTimeMS > 0 ) iterable.maxAwaitTime( maxAwaitTimeMS, TimeUnit.MILLISECONDS );
+        if ( bypassDocumentValidation != null ) iterable.bypassDocumentValidation( bypassDocumentValidation );
+        if ( collation != null ) iterable.collation( collation );
+        if ( comment != null ) iterable.comment( comment );
+        if ( hint != null ) iterable.hint( hint );
+        if ( hintString != null ) iterable.hintString( hintString );
+        if ( variables != null ) iterable.let( variables );
+        return iterable;
+    }
+
+    // $out AND $merge HAVE TO BE THE LAST STAGE
+    private boolean writesOutput(){
+        if ( pipeline.isEmpty() ) return false;
+        final Object last = pipeline.get( pipeline.size() - 1 );
+        return last instanceof Map && ( ((Map)last).containsKey("$out") || ((Map)last).containsKey("$merge"));
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Append a $limit stage, unless the pipeline ends with $out or $merge.
+     */
+    public WrappedAggregateIterable<TResult> limit(int i) {
+        this.limit = i;
+        return this;
+    }
+
+    public long getMaxTimeMS() {
+        return maxTimeMS;
+    }
+
+    public WrappedAggregateIterable<TResult> maxTime(long l, TimeUnit timeUnit) {
+        this.maxTimeMS = timeUnit.toMillis( l );
+        return this;
+    }
+
+    public WrappedAggregateIterable<TResult> maxAwaitTime(long l, TimeUnit timeUnit) {
+        this.maxAwaitTimeMS = timeUnit.toMillis( l );
+        return this;
+    }
+
+    public WrappedAggregateIterable<TResult> allowDiskUse(Boolean b) {
+        this.allowDiskUse = b;
+        return this;
+    }
+
+    public WrappedAggregateIterable<TResult> batchSize(int i) {
+        this.batchSize = i;
+        return this;
+    }
+
+    public WrappedAggregateIterable<TResult> bypassDocumentValidation(Boolean b) {
+        this.bypassDocumentValidation = b;
+        return this;
+    }
+
+    public WrappedAggregateIterable<TResult> collation(Collation collation) {
+        this.collation = collation;
+        return this;
+    }
+
+    public WrappedAggregateIterable<TResult> comment(String comment) {
+        this.comment = comment;
+        return this;
+    }
+
+    public WrappedAggregateIterable<TResult> hint(Bson hint) {
+        this.hint = hint;
+        return this;
+    }
+
+    public WrappedAggregateIterable<TResult> hintString(String hint) {
+        this.hintString = hint;
+        return this;
+    }
+
+    public WrappedAggregateIterable<TResult> let(Bson variables) {
+        this.variables = variables;
+        return this;
+    }
+
+    public void toCollection() {
+        createAggregateIterable().toCollection();
+    }
+
+    public MongoCursor<TResult> iterator() {
+        return createAggregateIterable().iterator();
+    }
+
+    @Override
+    public MongoCursor<TResult> cursor() {
+        return createAggregateIterable().cursor();
+    }
+
+    public TResult first() {
+        return createAggregateIterable().first();
+    }
+
+    public <U> MongoIterable<U> map(Function<TResult, U> tResultUFunction) {
+        return createAggregateIterable().map( tResultUFunction );
+    }
+
+    public <A extends Collection<? super TResult>> A into(A a) {
+        return createAggregateIterable().into( a );
+    }
+
+    public void forEach(Consumer action) {
+        createAggregateIterable().forEach( action );
+    }
+
+    public Document explain(){
+        return createAggregateIterable().explain();
+    }
+
+    public Document explain( ExplainVerbosity verbosity ){
+        return createAggregateIterable().explain( verbosity );
+    }
+}
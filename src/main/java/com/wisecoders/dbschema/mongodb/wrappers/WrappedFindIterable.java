@@ -3,10 +3,16 @@ package com.wisecoders.dbschema.mongodb.wrappers;
 import com.mongodb.BasicDBObject;
 import com.mongodb.CursorType;
 import com.mongodb.Function;
+import com.mongodb.MongoException;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.EstimatedDocumentCountOptions;
 import com.wisecoders.dbschema.mongodb.GraalConvertor;
+import org.bson.BsonDocument;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 
@@ -14,6 +20,9 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import static com.wisecoders.dbschema.mongodb.JdbcDriver.LOGGER;
 
 
 /**
@@ -23,23 +32,34 @@ import java.util.function.Consumer;
 public class WrappedFindIterable<TResult> implements com.mongodb.client.MongoIterable<TResult> {
 
     private final FindIterable<TResult> findIterable;
+    // KEPT TO RUN count() ON THE SERVER WITH THE SAME FILTER, SKIP AND LIMIT
+    private final MongoCollection<TResult> mongoCollection;
+    private final ClientSession clientSession;
+    private Bson filter;
+    private int skip = 0, limit = 0;
+    private long maxTimeMS = 0;
 
     private TResult toDocument( Map map ){
         return (TResult)( new Document( map ));
     }
 
     public WrappedFindIterable(FindIterable<TResult> findIterable ){
+        this( null, null, null, findIterable );
+    }
+
+    WrappedFindIterable(MongoCollection<TResult> mongoCollection, ClientSession clientSession, Bson filter, FindIterable<TResult> findIterable ){
+        this.mongoCollection = mongoCollection;
+        this.clientSession = clientSession;
+        this.filter = filter;
         this.findIterable = findIterable;
     }
 
     public WrappedFindIterable filter(String str) {
-        findIterable.filter( BasicDBObject.parse(str) );
-        return this;
+        return filter( (Bson)BasicDBObject.parse(str) );
     }
 
     public WrappedFindIterable filter(Map map) {
-        findIterable.filter( GraalConvertor.toBson( map ) );
-        return this;
+        return filter( GraalConvertor.toBson( map ) );
     }
 
     public WrappedFindIterable projection(String str) {
@@ -66,33 +86,67 @@ public class WrappedFindIterable<TResult> implements com.mongodb.client.MongoIte
         return this;
     }
 
+    /**
+     * Count on the server using the current filter, skip and limit. Without filter, skip and limit the count is taken from the collection metadata.
+     */
     public long count(){
-        long cnt=0;
-        for( TResult res : findIterable ){
-            cnt++;
+        if ( mongoCollection == null ){
+            long cnt=0;
+            for( TResult res : findIterable ){
+                cnt++;
+            }
+            return cnt;
+        }
+        final boolean noFilter = filter == null || filter.toBsonDocument().isEmpty();
+        if ( noFilter && skip == 0 && limit == 0 && clientSession == null ){
+            try {
+                return mongoCollection.estimatedDocumentCount( new EstimatedDocumentCountOptions().maxTime( maxTimeMS, TimeUnit.MILLISECONDS ));
+            } catch ( MongoException ex ){
+                // VIEWS DO NOT SUPPORT THE ESTIMATED COUNT
+                LOGGER.log(Level.FINE, "Estimated count failed on " + mongoCollection.getNamespace() + ", using countDocuments.", ex );
+            }
         }
-        return cnt;
+        final CountOptions options = new CountOptions().skip( skip ).maxTime( maxTimeMS, TimeUnit.MILLISECONDS );
+        if ( limit != 0 ){
+            options.limit( Math.abs( limit ));
+        }
+        final Bson countFilter = noFilter ? new BsonDocument() : filter;
+        return clientSession != null ?
+                mongoCollection.countDocuments( clientSession, countFilter, options ) :
+                mongoCollection.countDocuments( countFilter, options );
     }
 
     //---------------------------------------------------------------
 
     public WrappedFindIterable filter(Bson bson) {
         findIterable.filter( bson );
+        this.filter = bson;
         return this;
     }
 
+    public long getMaxTimeMS() {
+        return maxTimeMS;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
     public WrappedFindIterable limit(int i) {
         findIterable.limit( i );
+        this.limit = i;
         return this;
     }
 
     public WrappedFindIterable skip(int i) {
         findIterable.skip( i );
+        this.skip = i;
         return this;
     }
 
     public WrappedFindIterable maxTime(long l, TimeUnit timeUnit) {
         findIterable.maxTime( l, timeUnit);
+        this.maxTimeMS = timeUnit.toMillis( l );
         return this;
     }
 
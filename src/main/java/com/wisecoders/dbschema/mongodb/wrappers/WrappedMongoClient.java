@@ -5,15 +5,21 @@ import com.mongodb.client.ListDatabasesIterable;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoIterable;
-import com.wisecoders.dbschema.mongodb.ScanStrategy;
+import com.wisecoders.dbschema.mongodb.ScanOptions;
+import com.wisecoders.dbschema.mongodb.structure.MetaDatabase;
+import com.wisecoders.dbschema.mongodb.structure.SchemaCache;
+import com.wisecoders.dbschema.mongodb.structure.SchemaRegistry;
 import org.bson.BsonDocument;
 import org.bson.BsonInt64;
 import org.bson.Document;
 import org.bson.UuidRepresentation;
 import org.bson.conversions.Bson;
 
+import java.io.File;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 
 import static com.wisecoders.dbschema.mongodb.JdbcDriver.LOGGER;
@@ -27,10 +33,12 @@ public class WrappedMongoClient {
     private final MongoClient mongoClient;
     private final String databaseName;
     private final String uri;
-    private final ScanStrategy scanStrategy;
-    public final boolean expandResultSet, sortFields;
+    public final ScanOptions scanOptions;
+    private final SchemaCache schemaCache;
+    public final boolean expandResultSet;
+    public final int scriptCacheSize, batchSize, discoveryThreads;
 
-    public WrappedMongoClient(String uri, final Properties prop, final String databaseName, final ScanStrategy scanStrategy, boolean expandResultSet, boolean sortFields ){
+    public WrappedMongoClient(String uri, final Properties prop, final String databaseName, final ScanOptions scanOptions, boolean expandResultSet, int scriptCacheSize, int batchSize, int discoveryThreads ){
         final ConnectionString connectionString = new ConnectionString(uri){
             @Override
             public Integer getMaxConnectionIdleTime() {
@@ -46,8 +54,11 @@ public class WrappedMongoClient {
         this.databaseName = databaseName;
         this.uri = uri;
         this.expandResultSet = expandResultSet;
-        this.scanStrategy = scanStrategy;
-        this.sortFields = sortFields;
+        this.scanOptions = scanOptions;
+        this.schemaCache = scanOptions.schemaCacheDirectory != null ? new SchemaCache( new File( scanOptions.schemaCacheDirectory ), uri ) : null;
+        this.scriptCacheSize = scriptCacheSize;
+        this.batchSize = batchSize;
+        this.discoveryThreads = discoveryThreads;
         getDatabaseNames();
     }
 
@@ -65,9 +76,20 @@ public class WrappedMongoClient {
     }
 
     public void close(){
+        for ( WrappedMongoDatabase db : cachedDatabases.values() ){
+            closeDatabase( db );
+        }
+        cachedDatabases.clear();
         mongoClient.close();
     }
 
+    private void closeDatabase( WrappedMongoDatabase db ){
+        db.close();
+        if ( scanOptions.sharedSchema ){
+            SchemaRegistry.releaseMetaDatabase( uri, db.metaDatabase.name );
+        }
+    }
+
     public MongoIterable<String> listDatabaseNames() {
         return mongoClient.listDatabaseNames();
     }
@@ -80,8 +102,8 @@ public class WrappedMongoClient {
         return mongoClient.listDatabases(clazz);
     }
 
-    // USE STATIC SO OPENING A NEW CONNECTION WILL REMEMBER THIS
-    public static final List<String> createdDatabases = new ArrayList<>();
+    // USE STATIC SO OPENING A NEW CONNECTION WILL REMEMBER THIS. COPY-ON-WRITE, AS CONNECTIONS MAY ADD DATABASES CONCURRENTLY
+    public static final CopyOnWriteArrayList<String> createdDatabases = new CopyOnWriteArrayList<>();
 
 
     public String getCurrentDatabaseName() {
@@ -107,15 +129,25 @@ public class WrappedMongoClient {
         return names;
     }
 
-    private final Map<String, WrappedMongoDatabase> cachedDatabases = new HashMap<>();
+    private final Map<String, WrappedMongoDatabase> cachedDatabases = new ConcurrentHashMap<>();
 
+    /**
+     * The WrappedMongoDatabase constructor loads the validators from the server, so it is not called inside the map
+     * computeIfAbsent(), which would block other callers. If more threads create the same database, the first one added is used.
+     */
     public WrappedMongoDatabase getDatabase(String dbName) {
-        if ( cachedDatabases.containsKey(dbName )){
-            return cachedDatabases.get( dbName);
+        final WrappedMongoDatabase cached = cachedDatabases.get( dbName );
+        if ( cached != null ){
+            return cached;
+        }
+        final MetaDatabase metaDatabase = scanOptions.sharedSchema ? SchemaRegistry.acquireMetaDatabase( uri, dbName ) : new MetaDatabase( dbName );
+        final WrappedMongoDatabase created = new WrappedMongoDatabase(mongoClient.getDatabase(dbName), scanOptions, schemaCache, metaDatabase );
+        final WrappedMongoDatabase existing = cachedDatabases.putIfAbsent( dbName, created );
+        if ( existing != null ){
+            closeDatabase( created );
+            return existing;
         }
-        WrappedMongoDatabase db = new WrappedMongoDatabase(mongoClient.getDatabase(dbName), scanStrategy, sortFields );
-        cachedDatabases.put( dbName, db );
-        return db;
+        return created;
     }
 
     public List<WrappedMongoDatabase> getDatabases() {
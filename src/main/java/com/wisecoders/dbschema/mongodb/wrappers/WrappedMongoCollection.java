@@ -54,6 +54,10 @@ public class WrappedMongoCollection<TDocument> {
         return find().explain();
     }
 
+    public boolean isView(){
+        return wrappedMongoDatabase.isView( mongoCollection.getNamespace().getCollectionName() );
+    }
+
     public MongoNamespace getNamespace() {
         return mongoCollection.getNamespace();
     }
@@ -206,46 +210,51 @@ public class WrappedMongoCollection<TDocument> {
 
 
     public WrappedFindIterable find() {
-        return new WrappedFindIterable(mongoCollection.find());
+        return new WrappedFindIterable(mongoCollection, null, null, mongoCollection.find());
     }
 
 
     public WrappedFindIterable find(Class aClass) {
-        return new WrappedFindIterable(mongoCollection.find( aClass ));
+        return new WrappedFindIterable(mongoCollection, null, null, mongoCollection.find( aClass ));
     }
 
 
     public WrappedFindIterable find(Map filter) {
-        return new WrappedFindIterable( mongoCollection.find(GraalConvertor.toBson(filter)));
+        final Bson bson = GraalConvertor.toBson(filter);
+        return new WrappedFindIterable( mongoCollection, null, bson, mongoCollection.find(bson));
     }
 
     public WrappedFindIterable find(Map filter, Map projection) {
-        return new WrappedFindIterable( mongoCollection.find(GraalConvertor.toBson(filter)).projection( GraalConvertor.toBson(projection) ));
+        final Bson bson = GraalConvertor.toBson(filter);
+        return new WrappedFindIterable( mongoCollection, null, bson, mongoCollection.find(bson).projection( GraalConvertor.toBson(projection) ));
     }
 
 
     public WrappedFindIterable find(Map filter, Class aClass) {
-        return new WrappedFindIterable( mongoCollection.find( GraalConvertor.toBson(filter), aClass));
+        final Bson bson = GraalConvertor.toBson(filter);
+        return new WrappedFindIterable( mongoCollection, null, bson, mongoCollection.find( bson, aClass));
     }
 
 
     public WrappedFindIterable find(ClientSession clientSession) {
-        return new WrappedFindIterable( mongoCollection.find(clientSession));
+        return new WrappedFindIterable( mongoCollection, clientSession, null, mongoCollection.find(clientSession));
     }
 
 
     public WrappedFindIterable find(ClientSession clientSession, Class aClass) {
-        return new WrappedFindIterable( mongoCollection.find( clientSession, aClass ));
+        return new WrappedFindIterable( mongoCollection, clientSession, null, mongoCollection.find( clientSession, aClass ));
     }
 
 
     public WrappedFindIterable find(ClientSession clientSession, Map filter) {
-        return new WrappedFindIterable( mongoCollection.find( clientSession, GraalConvertor.toBson(filter) ));
+        final Bson bson = GraalConvertor.toBson(filter);
+        return new WrappedFindIterable( mongoCollection, clientSession, bson, mongoCollection.find( clientSession, bson ));
     }
 
 
     public WrappedFindIterable find(ClientSession clientSession, Map filter, Class aClass) {
-        return new WrappedFindIterable( mongoCollection.find( clientSession, GraalConvertor.toBson(filter), aClass ));
+        final Bson bson = GraalConvertor.toBson(filter);
+        return new WrappedFindIterable( mongoCollection, clientSession, bson, mongoCollection.find( clientSession, bson, aClass ));
     }
 
     //
@@ -293,54 +302,54 @@ public class WrappedMongoCollection<TDocument> {
         return new WrappedFindIterable<TDocument>( mongoCollection.find( clientSession, GraalConvertor.toBson(filter), aClass )).first();
     }
 
-    public AggregateIterable aggregate(List pipeline) {
-        return mongoCollection.aggregate(GraalConvertor.toList(pipeline));
+    public WrappedAggregateIterable aggregate(List pipeline) {
+        return new WrappedAggregateIterable( mongoCollection, null, GraalConvertor.toList(pipeline), null );
     }
 
-    public AggregateIterable aggregate(Object object) {
+    public WrappedAggregateIterable aggregate(Object object) {
         List list = new ArrayList();
         list.add( GraalConvertor.toBson(object) );
-        return mongoCollection.aggregate(list);
+        return new WrappedAggregateIterable( mongoCollection, null, list, null );
     }
 
-    public AggregateIterable aggregate(Object obj1, Object obj2) {
+    public WrappedAggregateIterable aggregate(Object obj1, Object obj2) {
         List list = new ArrayList();
         list.add( GraalConvertor.toBson(obj1) );
         list.add( GraalConvertor.toBson(obj2));
-        return mongoCollection.aggregate(list);
+        return new WrappedAggregateIterable( mongoCollection, null, list, null );
     }
 
-    public AggregateIterable aggregate(Object obj1, Object obj2, Object obj3) {
+    public WrappedAggregateIterable aggregate(Object obj1, Object obj2, Object obj3) {
         List list = new ArrayList();
         list.add( GraalConvertor.toBson(obj1) );
         list.add( GraalConvertor.toBson(obj2));
         list.add( GraalConvertor.toBson(obj3));
-        return mongoCollection.aggregate(list);
+        return new WrappedAggregateIterable( mongoCollection, null, list, null );
     }
 
-    public AggregateIterable aggregate(Object obj1, Object obj2, Object obj3, Object obj4) {
+    public WrappedAggregateIterable aggregate(Object obj1, Object obj2, Object obj3, Object obj4) {
         List list = new ArrayList();
         list.add( GraalConvertor.toBson(obj1) );
         list.add( GraalConvertor.toBson(obj2));
         list.add( GraalConvertor.toBson(obj3));
         list.add( GraalConvertor.toBson(obj4));
-        return mongoCollection.aggregate(list);
+        return new WrappedAggregateIterable( mongoCollection, null, list, null );
     }
 
 
 
-    public AggregateIterable aggregate(List pipeline, Class aClass) {
-        return mongoCollection.aggregate( GraalConvertor.toList(pipeline), aClass );
+    public WrappedAggregateIterable aggregate(List pipeline, Class aClass) {
+        return new WrappedAggregateIterable( mongoCollection, null, GraalConvertor.toList(pipeline), aClass );
     }
 
 
-    public AggregateIterable aggregate(ClientSession clientSession, List pipeline) {
-        return mongoCollection.aggregate( clientSession, GraalConvertor.toList(pipeline) );
+    public WrappedAggregateIterable aggregate(ClientSession clientSession, List pipeline) {
+        return new WrappedAggregateIterable( mongoCollection, clientSession, GraalConvertor.toList(pipeline), null );
     }
 
 
-    public AggregateIterable aggregate(ClientSession clientSession, List pipeline, Class aClass) {
-        return mongoCollection.aggregate( clientSession, GraalConvertor.toList(pipeline), aClass );
+    public WrappedAggregateIterable aggregate(ClientSession clientSession, List pipeline, Class aClass) {
+        return new WrappedAggregateIterable( mongoCollection, clientSession, GraalConvertor.toList(pipeline), aClass );
     }
 
 
@@ -447,27 +456,55 @@ public class WrappedMongoCollection<TDocument> {
     }
 
 
-    public void insertMany(Object[] arr) {
-        for ( Object obj: arr ){
-            insertOne( (Map)obj );
+    /**
+     * Convert the JavaScript array, Java array or list into documents in one pass, for a single native insertMany.
+     */
+    private List<TDocument> toDocuments( Object obj ){
+        final List<TDocument> documents = new ArrayList<>();
+        if ( obj instanceof Object[] ){
+            for ( Object element : (Object[])obj ){
+                documents.add( toDocument( (Map)element ));
+            }
+        } else if ( obj instanceof List ){
+            for ( Object element : (List)obj ){
+                documents.add( toDocument( (Map)element ));
+            }
+        } else if ( obj instanceof Map ){
+            // A JAVASCRIPT ARRAY MAY BE RECEIVED AS MAP
+            final List list = GraalConvertor.toList( obj );
+            if ( list != null ){
+                for ( Object element : list ){
+                    documents.add( toDocument( (Map)element ));
+                }
+            } else {
+                documents.add( toDocument( (Map)obj ));
+            }
         }
+        return documents;
     }
 
-    public void insertMany(List list) {
-        for ( Object obj: list ){
-            insertOne( (Map)obj );
+    private static final String ORDERED_KEY = "ordered";
+    private static final String BYPASS_DOCUMENT_VALIDATION_KEY = "bypassDocumentValidation";
+
+    private static InsertManyOptions toInsertManyOptions( Map options ){
+        final InsertManyOptions insertManyOptions = new InsertManyOptions();
+        if ( options != null ){
+            if ( options.get(ORDERED_KEY) instanceof Boolean ) insertManyOptions.ordered( (Boolean) options.get(ORDERED_KEY));
+            if ( options.get(BYPASS_DOCUMENT_VALIDATION_KEY) instanceof Boolean ) insertManyOptions.bypassDocumentValidation( (Boolean) options.get(BYPASS_DOCUMENT_VALIDATION_KEY));
         }
+        return insertManyOptions;
+    }
+
+    public void insertMany(Object[] arr) {
+        insertManyDocuments( null, toDocuments( arr ), new InsertManyOptions() );
+    }
+
+    public void insertMany(List list) {
+        insertManyDocuments( null, toDocuments( list ), new InsertManyOptions() );
     }
 
     public void insertMany(Object obj) {
-        List list = GraalConvertor.toList( obj );
-        if ( list != null ) {
-            for (Map map1 : (List<Map>) list) {
-                insertOne(map1);
-            }
-        } else if (obj instanceof Map) {
-            insertOne((Map) obj);
-        }
+        insertManyDocuments( null, toDocuments( obj ), new InsertManyOptions() );
     }
 
     public void insert(Map input) {
@@ -488,14 +525,30 @@ public class WrappedMongoCollection<TDocument> {
 
 
     public void insertMany(List<Map> list, InsertManyOptions options) {
+        insertManyDocuments( null, toDocuments( list ), options );
+    }
+
+    public void insertMany(List list, Map options) {
+        insertManyDocuments( null, toDocuments( list ), toInsertManyOptions( options ));
     }
 
 
     public void insertMany(ClientSession clientSession, List list) {
+        insertManyDocuments( clientSession, toDocuments( list ), new InsertManyOptions() );
     }
 
 
     public void insertMany(ClientSession clientSession, List list, InsertManyOptions options) {
+        insertManyDocuments( clientSession, toDocuments( list ), options );
+    }
+
+    private void insertManyDocuments( ClientSession clientSession, List<TDocument> documents, InsertManyOptions options ){
+        if ( documents.isEmpty() ) return;
+        if ( clientSession != null ){
+            mongoCollection.insertMany( clientSession, documents, options );
+        } else {
+            mongoCollection.insertMany( documents, options );
+        }
     }
 
 
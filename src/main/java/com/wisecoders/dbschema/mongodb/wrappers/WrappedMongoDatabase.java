@@ -1,25 +1,40 @@
 package com.wisecoders.dbschema.mongodb.wrappers;
 
 import com.google.gson.GsonBuilder;
+import com.mongodb.MongoException;
 import com.mongodb.client.ListCollectionsIterable;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.MongoIterable;
 import com.mongodb.client.model.CreateCollectionOptions;
 import com.mongodb.client.model.ValidationOptions;
 import com.wisecoders.dbschema.mongodb.GraalConvertor;
-import com.wisecoders.dbschema.mongodb.ScanStrategy;
+import com.wisecoders.dbschema.mongodb.ScanOptions;
 import com.wisecoders.dbschema.mongodb.Util;
 import com.wisecoders.dbschema.mongodb.structure.MetaCollection;
 import com.wisecoders.dbschema.mongodb.structure.MetaDatabase;
+import com.wisecoders.dbschema.mongodb.structure.SchemaCache;
 import org.bson.Document;
 import org.graalvm.polyglot.Value;
 import org.graalvm.polyglot.proxy.ProxyExecutable;
 import org.graalvm.polyglot.proxy.ProxyObject;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import static com.wisecoders.dbschema.mongodb.JdbcDriver.LOGGER;
@@ -34,29 +49,59 @@ import static com.wisecoders.dbschema.mongodb.JdbcDriver.LOGGER;
 public class WrappedMongoDatabase implements ProxyObject {
 
     private final MongoDatabase mongoDatabase;
-    private final ScanStrategy scanStrategy;
+    private final ScanOptions scanOptions;
+    private final SchemaCache schemaCache;
     public final MetaDatabase metaDatabase;
-    private final boolean sortFields;
+    private boolean isWatching = false;
 
-    WrappedMongoDatabase( MongoDatabase mongoDatabase, ScanStrategy scanStrategy, boolean sortFields ){
+    WrappedMongoDatabase( MongoDatabase mongoDatabase, ScanOptions scanOptions, SchemaCache schemaCache, MetaDatabase metaDatabase ){
         this.mongoDatabase = mongoDatabase;
-        this.scanStrategy = scanStrategy;
-        this.metaDatabase = new MetaDatabase(mongoDatabase.getName());
-        this.sortFields = sortFields;
+        this.scanOptions = scanOptions;
+        this.schemaCache = schemaCache;
+        this.metaDatabase = metaDatabase;
+        loadValidators();
+    }
+
+    /**
+     * Create the collections defined by $jsonSchema validators. The MetaDatabase may be shared by more connections, so this
+     * is done only once, or again after MetaDatabase.refresh(). Other connections wait, so they don't scan these collections.
+     * Once loaded, the check doesn't lock.
+     */
+    private void loadValidators(){
+        if ( metaDatabase.isValidatorsLoaded() ){
+            return;
+        }
+        synchronized ( metaDatabase ) {
+            if ( !metaDatabase.isValidatorsLoaded() ){
+                loadValidatorCollections();
+                metaDatabase.setValidatorsLoaded();
+            }
+        }
+    }
+
+    private void loadValidatorCollections(){
         try {
             if ( !"config".equals(mongoDatabase.getName()) && !"admin".equals(mongoDatabase.getName()) && !"local".equals(mongoDatabase.getName())) {
                 for (Document info : mongoDatabase.listCollections()) {
                     Document definition = (Document) Util.getByPath(info, "options.validator.$jsonSchema");
-                    if (definition != null) {
-                        final String name = info.getString("name");
-                        final MetaCollection metaCollection = metaDatabase.createMetaCollection(name, false);
+                    final String name = info.getString("name");
+                    if ( definition != null && scanOptions.strictValidators && !isStrictValidator( info, definition )){
+                        LOGGER.info("Validator of " + mongoDatabase.getName() + "." + name + " is not strict, the collection will be scanned.");
+                    } else if (definition != null) {
+                        final MetaCollection metaCollection = new MetaCollection(metaDatabase, name, false);
                         try {
-                            metaCollection.visitValidatorNode(null, true, definition, sortFields );
+                            metaCollection.visitValidatorNode(null, true, definition, scanOptions.sortFields );
+                            metaCollection.sortFields();
                         } catch (Throwable ex) {
                             LOGGER.log(Level.SEVERE, "Error parsing validation rule for " + name + "\n\n" + new GsonBuilder().setPrettyPrinting().create().toJson(definition) + "\n", ex);
-                            metaDatabase.dropMetaCollection(name);
+                            continue;
                         }
                         metaCollection.scanIndexes(getCollection(name));
+                        if ( scanOptions.validatorSampleSize > 0 ){
+                            metaCollection.sampleObjectIds(getCollection(name), scanOptions.validatorSampleSize );
+                        }
+                        // ADDED WHEN COMPLETE, SO OTHER THREADS NEVER READ A PARTIAL COLLECTION
+                        metaDatabase.addMetaCollection( metaCollection );
                     }
                 }
             }
@@ -65,6 +110,18 @@ public class WrappedMongoDatabase implements ProxyObject {
         }
     }
 
+    /**
+     * A validator describes the complete structure if it is enforced for all documents and it lists all the fields.
+     * Documents inserted before the validator was created may still not match it.
+     */
+    private static boolean isStrictValidator( Document info, Document definition ){
+        final String validationLevel = (String)Util.getByPath( info, "options.validationLevel");
+        final String validationAction = (String)Util.getByPath( info, "options.validationAction");
+        return ( validationLevel == null || "strict".equals( validationLevel )) &&
+                ( validationAction == null || "error".equals( validationAction )) &&
+                Util.isClosedJsonSchema( definition );
+    }
+
     public MetaCollection getMetaCollectionIfAlreadyLoaded( String collectionName) {
         if (collectionName == null || collectionName.isEmpty()) return null;
 
@@ -75,17 +132,161 @@ public class WrappedMongoDatabase implements ProxyObject {
     public MetaCollection getMetaCollection( String collectionName){
         if ( collectionName == null || collectionName.isEmpty()) return null;
 
-        final MetaCollection metaCollection = metaDatabase.getMetaCollection(collectionName);
-        if (metaCollection == null) {
-            try {
-                return metaDatabase.createMetaCollection( collectionName, true ).scanDocumentsAndIndexes( getCollection(collectionName), scanStrategy, sortFields );
-            } catch ( Throwable ex ){
-                LOGGER.log(Level.SEVERE, "Error discovering collection " + mongoDatabase.getName() + "." + collectionName + ". ", ex );
+        loadValidators();
+        return metaDatabase.discoverMetaCollection( collectionName, scanOptions.schemaTtlMs, () -> discoverMetaCollection( collectionName ));
+    }
+
+    private MetaCollection discoverMetaCollection( String collectionName ){
+        final SchemaCache.Signature signature = schemaCache != null ? getSignature( collectionName ) : null;
+        if ( signature != null ){
+            final MetaCollection cachedCollection = schemaCache.load( metaDatabase, collectionName, signature );
+            if ( cachedCollection != null ){
+                startSchemaWatcher();
+                return cachedCollection;
             }
+        }
+        // START WATCHING BEFORE THE SCAN, SO NO CHANGE IS MISSED
+        startSchemaWatcher();
+        final MetaCollection scannedCollection = new MetaCollection( metaDatabase, collectionName, true ).scanDocumentsAndIndexes( getCollection(collectionName), scanOptions );
+        if ( signature != null ){
+            schemaCache.save( scannedCollection, signature );
+        }
+        return scannedCollection;
+    }
+
+    /**
+     * Forget the deduced structure of the collection, or of all collections if the name is null, so they are scanned again.
+     * With sharedSchema=true this applies to all connections.
+     */
+    public void refreshSchema( String collectionName ){
+        if ( collectionName != null ){
+            metaDatabase.refresh( collectionName );
         } else {
-            return metaCollection;
+            metaDatabase.refresh();
+        }
+    }
+
+    // THE MetaDatabase MAY BE SHARED, SO IS WATCHED BY A SINGLE SchemaWatcher FOR ALL CONNECTIONS
+    private synchronized void startSchemaWatcher(){
+        if ( scanOptions.watch && !isWatching ){
+            isWatching = true;
+            SchemaWatcher.watch( this, scanOptions.sortFields );
+        }
+    }
+
+    synchronized void close(){
+        if ( isWatching ){
+            isWatching = false;
+            SchemaWatcher.unwatch( this );
+        }
+    }
+
+    MongoDatabase getMongoDatabase(){
+        return mongoDatabase;
+    }
+
+    /**
+     * The validator, the indexes and the estimated document count, used to check if the cached structure is still valid.
+     * Return null if the user has no rights to list the collections or the indexes, so the collection is scanned without cache.
+     */
+    private SchemaCache.Signature getSignature( String collectionName ){
+        final Document info;
+        final StringBuilder indexes = new StringBuilder();
+        final MongoCollection<Document> mongoCollection = mongoDatabase.getCollection( collectionName );
+        try {
+            info = mongoDatabase.listCollections().filter( new Document("name", collectionName )).first();
+            for ( Document index : mongoCollection.listIndexes() ){
+                indexes.append( index.get("name")).append( index.get("key", Document.class ).toJson() ).append( index.get("unique")).append("\n");
+            }
+        } catch ( MongoException ex ){
+            LOGGER.log( Level.INFO, "Cannot read the signature of " + mongoDatabase.getName() + "." + collectionName + ", the schema cache is not used. " + ex.getMessage() );
+            return null;
+        }
+        final Object validator = info != null ? Util.getByPath( info, "options.validator") : null;
+        long documentCount = -1;
+        try {
+            documentCount = mongoCollection.estimatedDocumentCount();
+        } catch ( MongoException ex ){
+            // VIEWS DO NOT SUPPORT THE ESTIMATED COUNT
+            LOGGER.log( Level.FINE, "Cannot get the estimated count of " + mongoDatabase.getName() + "." + collectionName, ex );
+        }
+        return new SchemaCache.Signature( validator instanceof Document ? ((Document)validator).toJson() : "", indexes.toString(), documentCount );
+    }
+
+    private static final int MAX_DISCOVERY_THREADS = 16;
+    // SHARED BY ALL CONNECTIONS, SO PARALLEL DISCOVERIES DO NOT MULTIPLY THE THREADS. THE PERMITS BOUND ALSO THE VIRTUAL THREADS
+    private static final ExecutorService DISCOVERY_EXECUTOR = createDiscoveryExecutor();
+    private static final Semaphore DISCOVERY_PERMITS = new Semaphore( MAX_DISCOVERY_THREADS );
+
+    /**
+     * The scans are mostly waiting on the network, so on Java 21 or newer they run on virtual threads. The driver is build
+     * for Java 11, so Executors.newVirtualThreadPerTaskExecutor() is called by reflection.
+     */
+    private static ExecutorService createDiscoveryExecutor(){
+        try {
+            final ExecutorService executor = (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke( null );
+            LOGGER.info("Discover collections using virtual threads");
+            return executor;
+        } catch ( ReflectiveOperationException ex ){
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor( MAX_DISCOVERY_THREADS, MAX_DISCOVERY_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                final Thread thread = new Thread( runnable, "MongoDB schema discovery" );
+                thread.setDaemon( true );
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut( true );
+            return executor;
+        }
+    }
+
+    /**
+     * Discover the given collections using up to 'threads' parallel scans. The scans are mostly waiting on the network,
+     * so this shortens the reverse engineering of databases with many collections. Each collection is scanned exactly as by
+     * getMetaCollection(), so the result is the same as discovering them one by one.
+     * The scans of all connections together use at most MAX_DISCOVERY_THREADS threads.
+     */
+    public void discoverMetaCollections( Collection<String> collectionNames, int threads ){
+        final List<String> pending = new ArrayList<>();
+        for ( String collectionName : collectionNames ){
+            if ( collectionName != null && !collectionName.isEmpty() && metaDatabase.getMetaCollection( collectionName ) == null ){
+                pending.add( collectionName );
+            }
+        }
+        if ( threads < 2 || pending.size() < 2 ){
+            return;
+        }
+        final int workers = Math.min( Math.min( threads, MAX_DISCOVERY_THREADS ), pending.size() );
+        LOGGER.info("Discover " + pending.size() + " collections in database " + mongoDatabase.getName() + " using " + workers + " threads");
+        // EACH WORKER SCANS COLLECTIONS FROM THE QUEUE UNTIL IT IS EMPTY
+        final Queue<String> queue = new ConcurrentLinkedQueue<>( pending );
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for ( int i = 0; i < workers; i++ ){
+                futures.add( DISCOVERY_EXECUTOR.submit( () -> {
+                    String collectionName;
+                    while (( collectionName = queue.poll()) != null ){
+                        DISCOVERY_PERMITS.acquire();
+                        try {
+                            getMetaCollection( collectionName );
+                        } finally {
+                            DISCOVERY_PERMITS.release();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for ( Future<?> future : futures ){
+                future.get();
+            }
+        } catch ( InterruptedException ex ){
+            Thread.currentThread().interrupt();
+        } catch ( ExecutionException ex ){
+            LOGGER.log(Level.SEVERE, "Error discovering collections in " + mongoDatabase.getName() + ". ", ex );
+        } finally {
+            queue.clear();
+            for ( Future<?> future : futures ){
+                future.cancel( true );
+            }
         }
-        return null;
     }
 
     @Override
@@ -109,6 +310,11 @@ public class WrappedMongoDatabase implements ProxyObject {
         }
     }
 
+    public boolean isView( String collectionName ){
+        final Document info = mongoDatabase.listCollections().filter( new Document("name", collectionName )).first();
+        return info != null && "view".equals( info.get("type"));
+    }
+
     public WrappedMongoCollection<Document> getCollection(String collectionName) {
         return new WrappedMongoCollection<>( this, mongoDatabase.getCollection(collectionName));
     }
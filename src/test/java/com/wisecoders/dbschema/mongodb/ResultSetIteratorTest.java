@@ -0,0 +1,80 @@
+package com.wisecoders.dbschema.mongodb;
+
+import com.wisecoders.dbschema.mongodb.resultSet.ResultSetIterator;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+
+public class ResultSetIteratorTest {
+
+    @Test
+    public void testExpandedReadAheadKeepsOrder() throws SQLException {
+        final List<Document> documents = new ArrayList<>();
+        for ( int i = 0; i < 1000; i++ ){
+            final Document document = new Document("_id", i).append("name", "name" + i);
+            if ( i == 250 ) document.append("late", true);
+            documents.add( document );
+        }
+        final ResultSetIterator rs = new ResultSetIterator( documents.iterator(), true );
+        // THE KEY FROM THE DOCUMENT 250 IS FOUND BY THE READ-AHEAD
+        assertThat( rs.getMetaData().getColumnCount() ).isEqualTo(3);
+        int i = 0;
+        while ( rs.next() ){
+            assertThat( rs.getInt(1) ).isEqualTo(i);
+            i++;
+        }
+        assertThat( i ).isEqualTo(1000);
+    }
+
+    @Test
+    public void testNullRows() throws SQLException {
+        final List<Object> rows = new ArrayList<>();
+        rows.add( new Document("a", 1));
+        rows.add( null );
+        rows.add( new Document("a", 2));
+        final ResultSetIterator rs = new ResultSetIterator( rows.iterator(), true );
+        assertThat( rs.next() ).isTrue();
+        assertThat( rs.getObject(1) ).isEqualTo(1);
+        assertThat( rs.next() ).isTrue();
+        assertThat( rs.getObject(1) ).isNull();
+        assertThat( rs.next() ).isTrue();
+        assertThat( rs.getObject(1) ).isEqualTo(2);
+        assertThat( rs.next() ).isFalse();
+    }
+
+    @Test
+    public void testMaxRows() throws SQLException {
+        final List<Document> documents = new ArrayList<>();
+        for ( int i = 0; i < 20; i++ ){
+            documents.add( new Document("_id", i));
+        }
+        for ( boolean expand : new boolean[]{ true, false } ){
+            final ResultSetIterator rs = new ResultSetIterator( documents.iterator(), expand, 5 );
+            int count = 0;
+            while ( rs.next() ) count++;
+            assertThat( count ).isEqualTo(5);
+        }
+    }
+
+    @Test
+    public void testCloseStopsIteration() throws SQLException {
+        final List<Document> documents = new ArrayList<>();
+        for ( int i = 0; i < 10; i++ ){
+            documents.add( new Document("_id", i));
+        }
+        final ResultSetIterator rs = new ResultSetIterator( documents.iterator(), true );
+        assertThat( rs.next() ).isTrue();
+        rs.close();
+        assertThat( rs.isClosed() ).isTrue();
+        assertThat( rs.next() ).isFalse();
+    }
+}
@@ -0,0 +1,120 @@
+package com.wisecoders.dbschema.mongodb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.bson.Document;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+
+public class ShellQueryTest {
+
+    @Test
+    public void testFind() {
+        ShellQuery query = ShellQuery.parse("db.books.find({ name: 'Java', qty: { $gt: 1 } }, {name:1}).sort({qty:-1}).skip(5).limit(10)");
+        assertThat(query).isNotNull();
+        assertThat(query.databaseName).isEqualTo("db");
+        assertThat(query.collectionName).isEqualTo("books");
+        assertThat(query.calls).extracting(call -> call.name).containsExactly("find", "sort", "skip", "limit");
+        assertThat(query.calls.get(0).args).hasSize(2);
+        assertThat(((Map) query.calls.get(0).args.get(0)).get("name")).isEqualTo("Java");
+        assertThat(query.calls.get(3).args).containsExactly(10);
+    }
+
+    @Test
+    public void testAggregateAndCount() {
+        ShellQuery query = ShellQuery.parse("local.getCollection('books').aggregate([{$match:{qty:{$gt:2}}}, {$group:{_id:'$name'}}])");
+        assertThat(query).isNotNull();
+        assertThat(query.databaseName).isEqualTo("local");
+        assertThat(query.collectionName).isEqualTo("books");
+        assertThat((List) query.calls.get(0).args.get(0)).hasSize(2);
+
+        assertThat(ShellQuery.parse("db.books.count({ _id: ObjectId('5f1d7f3e9b1e8b2a3c4d5e6f') })")).isNotNull();
+        assertThat(ShellQuery.parse("db.books.find().count()")).isNotNull();
+        assertThat(ShellQuery.parse("db.books.count()").toWriteModel()).isNull();
+        // INSERTS ARE EXECUTED BY JAVASCRIPT, ONLY PARAMETERIZED BATCHES WRITE THEM NATIVELY
+        assertThat(ShellQuery.parse("db.books.insertOne({ name: 'Go', qty: 3 })")).isNull();
+        assertThat(ParameterizedQuery.parse("db.books.insertOne({ name: ?, qty: 3 })").bindNative(new Object[]{"Go"}).toWriteModel()).isNotNull();
+    }
+
+    @Test
+    public void testJavaScriptIsNotRecognized() {
+        assertThat(ShellQuery.parse("db.books.find({ name: /ja/i })")).isNull();
+        assertThat(ShellQuery.parse("db.books.find({ qty: x })")).isNull();
+        assertThat(ShellQuery.parse("db.books.find({ date: ISODate('2020-01-01') })")).isNull();
+        assertThat(ShellQuery.parse("db.books.find({ date: { $date: '2020-01-01T00:00:00Z' } })")).isNull();
+        assertThat(ShellQuery.parse("db.books.find({ _id: { $oid: '5f1d7f3e9b1e8b2a3c4d5e6f' } })")).isNull();
+        assertThat(ShellQuery.parse("db.books.find({ price: { $numberDecimal: '2.5' } })")).isNull();
+        assertThat(ShellQuery.parse("db.books.insertMany([{ name: 'Go' }])")).isNull();
+        assertThat(ShellQuery.parse("db.books.find().forEach(function(d){ print(d) })")).isNull();
+        assertThat(ShellQuery.parse("db.createCollection('books')")).isNull();
+        assertThat(ShellQuery.parse("db.books.find(); db.books.drop()")).isNull();
+    }
+
+    @Test
+    public void testParameters() {
+        ParameterizedQuery query = ParameterizedQuery.parse("db.books.find({ name: ?, qty: { $gt: ? } }).limit(?)");
+        assertThat(query).isNotNull();
+        assertThat(query.parameterCount).isEqualTo(3);
+        assertThat(query.script).isEqualTo("db.books.find({ name: __jdbcParameter1, qty: { $gt: __jdbcParameter2 } }).limit(__jdbcParameter3)");
+
+        ShellQuery bound = query.bindNative(new Object[]{"Java", 2, 10});
+        assertThat(bound).isNotNull();
+        assertThat(((Map) bound.calls.get(0).args.get(0)).get("name")).isEqualTo("Java");
+        assertThat(bound.calls.get(1).args).containsExactly(10);
+        // THE TEMPLATE IS NOT CHANGED BY BINDING
+        assertThat(query.bindNative(new Object[]{"C++", 5, 20}).calls.get(1).args).containsExactly(20);
+        assertThat(query.bindNative(new Object[]{"C++", 5, "x"})).isNull();
+
+        assertThat(ParameterizedQuery.parse("db.books.find({ name: '?' })")).isNull();
+        assertThat(ParameterizedQuery.parse("db.books.find({ qty: a ? 1 : 2 })")).isNull();
+    }
+
+    @Test
+    public void testSameValuesAsJavaScript() throws Exception {
+        final List<String> filters = Arrays.asList(
+                "{ qty: 2.0, price: 2.5, total: 3000000000, big: 1e20, exp: 1e3, neg: -7 }",
+                "{ _id: ObjectId('5f1d7f3e9b1e8b2a3c4d5e6f'), n: NumberLong('5'), l: NumberLong('9000000000'), i: NumberInt('7') }",
+                "{ name: 'Java', tags: [ 'a', 1.0, true, null ], nested: { x: { $gt: 0.5 } } }");
+        try ( Context context = Context.newBuilder("js").allowAllAccess(true).build() ){
+            context.eval( Source.newBuilder("js", Util.readStringFromInputStream( MongoConnection.class.getResourceAsStream("init.js")), "init.js").build() );
+            for ( String filter : filters ){
+                final ShellQuery query = ShellQuery.parse("db.books.find(" + filter + ")");
+                assertThat(query).isNotNull();
+                assertThat(query.calls.get(0).args.get(0)).as(filter).isEqualTo(toJava(context.eval("js", "(" + filter + ")")));
+            }
+        }
+    }
+
+    // THE VALUES AS RECEIVED BY THE WRAPPERS FROM JAVASCRIPT
+    private static Object toJava(Value value) {
+        if (value.isNull()) {
+            return null;
+        } else if (value.isHostObject()) {
+            return value.asHostObject();
+        } else if (value.hasArrayElements()) {
+            final List<Object> list = new ArrayList<>();
+            for (long i = 0; i < value.getArraySize(); i++) {
+                list.add(toJava(value.getArrayElement(i)));
+            }
+            return list;
+        } else if (value.isString() || value.isBoolean() || value.isNumber()) {
+            return value.as(Object.class);
+        }
+        final Document document = new Document();
+        for (String key : value.getMemberKeys()) {
+            document.put(key, toJava(value.getMember(key)));
+        }
+        return document;
+    }
+}
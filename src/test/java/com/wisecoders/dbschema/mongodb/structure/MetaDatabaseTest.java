@@ -0,0 +1,149 @@
+package com.wisecoders.dbschema.mongodb.structure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+
+public class MetaDatabaseTest {
+
+    @Test
+    public void testSingleFlightDiscovery() throws Exception {
+        final MetaDatabase metaDatabase = SchemaRegistry.acquireMetaDatabase("mongodb://localhost/test", "sales");
+        assertThat( SchemaRegistry.acquireMetaDatabase("mongodb://localhost/test", "sales") ).isSameAs( metaDatabase );
+        final AtomicInteger scans = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try {
+            final List<Future<MetaCollection>> futures = new ArrayList<>();
+            for ( int i = 0; i < 8; i++ ){
+                futures.add( executor.submit( () -> metaDatabase.discoverMetaCollection("orders", 0, () -> {
+                    scans.incrementAndGet();
+                    started.countDown();
+                    // KEEP THE SCAN RUNNING, SO THE OTHER THREADS HAVE TO WAIT FOR IT
+                    Thread.sleep( 200 );
+                    // THE COLLECTION IS NOT VISIBLE BEFORE THE SCAN IS DONE
+                    assertThat( metaDatabase.getMetaCollection("orders") ).isNull();
+                    return new MetaCollection( metaDatabase, "orders", true );
+                })));
+            }
+            assertThat( started.await( 5, TimeUnit.SECONDS )).isTrue();
+            final MetaCollection first = futures.get(0).get();
+            assertThat( first ).isNotNull();
+            for ( Future<MetaCollection> future : futures ){
+                assertThat( future.get() ).isSameAs( first );
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat( scans.get() ).isEqualTo( 1 );
+
+        metaDatabase.refresh("orders");
+        assertThat( metaDatabase.getMetaCollection("orders") ).isNull();
+        SchemaRegistry.releaseMetaDatabase("mongodb://localhost/test", "sales");
+        SchemaRegistry.releaseMetaDatabase("mongodb://localhost/test", "sales");
+    }
+
+    @Test
+    public void testRegistryEntryRemovedByLastRelease() {
+        final MetaDatabase metaDatabase = SchemaRegistry.acquireMetaDatabase("mongodb://localhost/test", "inventory");
+        SchemaRegistry.acquireMetaDatabase("mongodb://localhost/test", "inventory");
+        assertThat( SchemaRegistry.acquireMetaDatabase("mongodb://localhost/other", "inventory") ).isNotSameAs( metaDatabase );
+        SchemaRegistry.releaseMetaDatabase("mongodb://localhost/other", "inventory");
+
+        SchemaRegistry.releaseMetaDatabase("mongodb://localhost/test", "inventory");
+        assertThat( SchemaRegistry.acquireMetaDatabase("mongodb://localhost/test", "inventory") ).isSameAs( metaDatabase );
+        SchemaRegistry.releaseMetaDatabase("mongodb://localhost/test", "inventory");
+        SchemaRegistry.releaseMetaDatabase("mongodb://localhost/test", "inventory");
+        // THE LAST CONNECTION WAS CLOSED, SO THE STRUCTURE IS NOT KEPT
+        final MetaDatabase created = SchemaRegistry.acquireMetaDatabase("mongodb://localhost/test", "inventory");
+        assertThat( created ).isNotSameAs( metaDatabase );
+        SchemaRegistry.releaseMetaDatabase("mongodb://localhost/test", "inventory");
+    }
+
+    @Test
+    public void testExpiredCollectionDiscoveredAgain() throws Exception {
+        final MetaDatabase metaDatabase = new MetaDatabase("sales");
+        final AtomicInteger scans = new AtomicInteger();
+        final MetaCollection first = metaDatabase.discoverMetaCollection("orders", 50, () -> {
+            scans.incrementAndGet();
+            return new MetaCollection( metaDatabase, "orders", true );
+        });
+        assertThat( metaDatabase.discoverMetaCollection("orders", 50, () -> null ) ).isSameAs( first );
+        Thread.sleep( 100 );
+        final MetaCollection second = metaDatabase.discoverMetaCollection("orders", 50, () -> {
+            scans.incrementAndGet();
+            return new MetaCollection( metaDatabase, "orders", true );
+        });
+        assertThat( second ).isNotSameAs( first );
+        assertThat( scans.get() ).isEqualTo( 2 );
+    }
+
+    @Test
+    public void testConcurrentDiscoveryScansEachCollectionOnce() throws Exception {
+        final MetaDatabase metaDatabase = new MetaDatabase("sales");
+        final AtomicInteger scans = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for ( int round = 0; round < 4; round++ ){
+                for ( int i = 0; i < 100; i++ ){
+                    final String name = "collection" + i;
+                    futures.add( executor.submit( () -> metaDatabase.discoverMetaCollection( name, 0, () -> {
+                        scans.incrementAndGet();
+                        final MetaCollection metaCollection = new MetaCollection( metaDatabase, name, true );
+                        // ITERATE WHILE OTHER THREADS ADD COLLECTIONS
+                        for ( MetaCollection other : metaDatabase.getMetaCollections() ){
+                            assertThat( other.name ).startsWith("collection");
+                        }
+                        return metaCollection;
+                    })));
+                }
+            }
+            for ( Future<?> future : futures ){
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat( scans.get() ).isEqualTo( 100 );
+        assertThat( metaDatabase.getMetaCollections() ).hasSize( 100 );
+    }
+
+    @Test
+    public void testRefreshDuringDiscovery() throws Exception {
+        final MetaDatabase metaDatabase = new MetaDatabase("sales");
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch refreshed = new CountDownLatch( 1 );
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<MetaCollection> future = executor.submit( () -> metaDatabase.discoverMetaCollection("orders", 0, () -> {
+                started.countDown();
+                refreshed.await( 5, TimeUnit.SECONDS );
+                return new MetaCollection( metaDatabase, "orders", true );
+            }));
+            assertThat( started.await( 5, TimeUnit.SECONDS )).isTrue();
+            metaDatabase.refresh("orders");
+            refreshed.countDown();
+            // THE WAITING CALLER GETS THE RESULT, BUT THE OUTDATED COLLECTION IS NOT KEPT
+            assertThat( future.get() ).isNotNull();
+            assertThat( metaDatabase.getMetaCollection("orders") ).isNull();
+        } finally {
+            executor.shutdownNow();
+        }
+        final MetaCollection discovered = metaDatabase.discoverMetaCollection("orders", 0, () -> new MetaCollection( metaDatabase, "orders", true ));
+        assertThat( metaDatabase.getMetaCollection("orders") ).isSameAs( discovered );
+    }
+}
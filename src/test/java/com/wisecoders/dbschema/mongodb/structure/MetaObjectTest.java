@@ -0,0 +1,108 @@
+package com.wisecoders.dbschema.mongodb.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import com.wisecoders.dbschema.mongodb.Util;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+
+public class MetaObjectTest {
+
+    private static Document createWideDocument( int fieldCount ){
+        final Document document = new Document("_id", new ObjectId());
+        // REVERSE ORDER, SO THE SORT HAS WORK TO DO
+        for ( int i = fieldCount - 1; i >= 0; i-- ){
+            document.append( String.format("f%05d", i ), i );
+        }
+        document.append("nested", new Document("b", 1).append("a", 2));
+        return document;
+    }
+
+    @Test
+    public void testWideDocumentSortedOnce() {
+        final int fieldCount = 5000;
+        final MetaCollection collection = new MetaCollection( new MetaDatabase("db"), "events", true );
+        for ( int i = 0; i < 20; i++ ){
+            collection.scanChangedDocument( createWideDocument( fieldCount ), true );
+        }
+
+        assertThat( collection.fields ).hasSize( fieldCount + 2 );
+        final List<String> names = new ArrayList<>();
+        for ( MetaField field : collection.fields ) names.add( field.name );
+        assertThat( names.get(0) ).isEqualTo("_id");
+        assertThat( names.subList( 1, names.size() )).isSorted();
+        assertThat( collection.getField("f04999") ).isNotNull();
+        assertThat( collection.getField("f04999").isMandatory() ).isTrue();
+        final MetaObject nested = (MetaObject)collection.getField("nested");
+        assertThat( nested.fields ).extracting( field -> field.name ).containsExactly("a", "b");
+        assertThat( collection.getFields() ).isEqualTo( collection.fields );
+        assertThat( collection.getFields() ).isSameAs( collection.getFields() );
+    }
+
+    @Test
+    public void testObjectFieldNextToValueField() {
+        final MetaCollection collection = new MetaCollection( new MetaDatabase("db"), "mixed", true );
+        collection.scanDocument( new Document("_id", 1 ).append("address", "Main Street"), false, 0 );
+        collection.scanDocument( new Document("_id", 2 ).append("address", new Document("city", "Zurich")), false, 0 );
+        collection.scanDocument( new Document("_id", 3 ).append("address", new Document("zip", "8000")), false, 0 );
+
+        assertThat( collection.fields ).extracting( field -> field.name ).containsExactly("_id", "address", "address");
+        assertThat( collection.getField("address") ).isNotInstanceOf( MetaObject.class );
+        final MetaObject address = collection.createObjectField("address", false, false );
+        assertThat( address.fields ).extracting( field -> field.name ).containsExactly("city", "zip");
+    }
+
+    @Test
+    public void testFindFieldByPath() {
+        final MetaCollection collection = new MetaCollection( new MetaDatabase("db"), "customers", true );
+        collection.scanDocument( new Document("_id", 1 )
+                .append("title", "Mr")
+                .append("titles", "Dr")
+                .append("address", new Document("city", "Zurich").append("geo", new Document("lat", 47.3)))
+                .append("orders", Arrays.asList( new Document("total", 10 )))
+                .append("a.b", 1 ), false, 0 );
+
+        assertThat( collection.findField("title").getNameWithPath() ).isEqualTo("title");
+        assertThat( collection.findField("titles").getNameWithPath() ).isEqualTo("titles");
+        assertThat( collection.findField("address.city").getNameWithPath() ).isEqualTo("address.city");
+        assertThat( collection.findField("address.geo.lat").getNameWithPath() ).isEqualTo("address.geo.lat");
+        assertThat( collection.findField("orders.total").getNameWithPath() ).isEqualTo("orders.total");
+        assertThat( collection.findField("a.b").getNameWithPath() ).isEqualTo("a.b");
+        // INCOMPLETE PATHS RETURN THE DEEPEST OBJECT
+        assertThat( collection.findField("address.zip").getNameWithPath() ).isEqualTo("address");
+        assertThat( collection.findField("missing") ).isNull();
+        assertThat( collection.findField("address.geo.lat").getNameWithPath() ).isSameAs( collection.findField("address.geo.lat").getNameWithPath() );
+    }
+
+    @Test
+    public void testValidatorObjectIds() {
+        final Document validator = Document.parse("{ bsonType: 'object', additionalProperties: false, required: ['_id', 'customerId'], properties: {" +
+                " _id: { bsonType: 'objectId' }, customerId: { bsonType: 'objectId' }," +
+                " items: { bsonType: 'array', items: { bsonType: 'object', additionalProperties: false, properties: { productId: { bsonType: 'objectId' }}}}}}");
+        assertThat( Util.isClosedJsonSchema( validator )).isTrue();
+        assertThat( Util.isClosedJsonSchema( Document.parse("{ bsonType: 'object', properties: { a: { bsonType: 'int' }}}"))).isFalse();
+        assertThat( Util.isClosedJsonSchema( Document.parse("{ bsonType: 'object', additionalProperties: false, properties: { a: { bsonType: 'object' }}}"))).isFalse();
+
+        final MetaCollection collection = new MetaCollection( new MetaDatabase("db"), "orders", false );
+        collection.visitValidatorNode( null, true, validator, false );
+        final int fieldCount = collection.getFieldCount();
+        final ObjectId customerId = new ObjectId(), productId = new ObjectId();
+        collection.collectObjectIds( new Document("_id", new ObjectId()).append("customerId", customerId )
+                .append("items", Arrays.asList( new Document("productId", productId )))
+                .append("unknown", new ObjectId()), 0 );
+
+        assertThat( collection.getFieldCount() ).isEqualTo( fieldCount );
+        assertThat( collection.getField("_id").objectId ).isNull();
+        assertThat( collection.getField("customerId").objectId ).isEqualTo( customerId );
+        assertThat( collection.findField("items.productId").objectId ).isEqualTo( productId );
+    }
+}
@@ -0,0 +1,185 @@
+package com.wisecoders.dbschema.mongodb.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import com.wisecoders.dbschema.mongodb.ScanOptions;
+import com.wisecoders.dbschema.mongodb.ScanStrategy;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinarySubType;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.Binary;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The raw BSON scan should deduce the same structure as the scan of decoded documents.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+
+public class RawDocumentScanTest {
+
+    private static Document createDocument( int i, int depth ){
+        final Document document = new Document("_id", new ObjectId())
+                .append("name", "name" + i)
+                .append("payload", new Binary( new byte[1000] ))
+                .append("text", String.join("", Collections.nCopies( 1000, "x")))
+                .append("amount", i % 2 == 0 ? (Object)i : (Object)Decimal128.parse("1.5"))
+                .append("created", new Date())
+                .append("ref", new ObjectId())
+                .append("tags", Arrays.asList("a", "b"))
+                .append("refs", Arrays.asList( new ObjectId(), new ObjectId()))
+                .append("mixed", Arrays.asList( 1, "a"))
+                .append("empty", Collections.emptyList())
+                .append("suburbs", new Document("0", new Document("name", "Scarsdale")).append("1", new Document("name", "North Hills")))
+                .append("items", Arrays.asList( new Document("qty", 1).append("sku", "a"), new Document("qty", 2L)));
+        if ( i % 3 == 0 ){
+            document.append("optional", null );
+        }
+        if ( depth > 0 ){
+            document.append("child", createDocument( i, depth - 1 ));
+        }
+        return document;
+    }
+
+    private static void describe( MetaObject metaObject, StringBuilder sb ){
+        for ( MetaField field : metaObject.fields ){
+            sb.append( field.getNameWithPath() ).append(' ').append( field.getTypeName() ).append(' ').append( field.getJavaType() )
+                    .append(' ').append( field.isMandatory() ).append(' ').append( field.getObjectId() ).append('\n');
+            if ( field instanceof MetaObject ){
+                describe( (MetaObject)field, sb );
+            }
+        }
+    }
+
+    @Test
+    public void testRawScanEqualsDocumentScan() {
+        final List<RawBsonDocument> rawDocuments = new ArrayList<>();
+        for ( int i = 0; i < 20; i++ ){
+            rawDocuments.add( new RawBsonDocument( createDocument( i, 30 ), new DocumentCodec()));
+        }
+        final MetaCollection decoded = new MetaCollection( new MetaDatabase("db"), "decoded", true );
+        final MetaCollection raw = new MetaCollection( new MetaDatabase("db"), "raw", true );
+        for ( RawBsonDocument rawDocument : rawDocuments ){
+            decoded.scanDocument( rawDocument.decode( new DocumentCodec()), false, 0 );
+            raw.scanRawDocument( new BsonBinaryReader( rawDocument.getByteBuffer().asNIO()), false, 0 );
+        }
+        final StringBuilder expected = new StringBuilder(), actual = new StringBuilder();
+        describe( decoded, expected );
+        describe( raw, actual );
+        assertThat( actual.toString() ).isEqualTo( expected.toString() );
+        assertThat( raw.getField("suburbs").getTypeName() ).isEqualTo("array[int]");
+        assertThat( raw.getField("refs").getObjectId() ).isNotNull();
+    }
+
+    private static long fingerprint( Document document ){
+        return DocumentShape.fingerprint( new RawBsonDocument( document, new DocumentCodec()).getByteBuffer().asNIO() );
+    }
+
+    @Test
+    public void testDocumentShape() {
+        assertThat( fingerprint( new Document("a", 1).append("b", "x")) ).isEqualTo( fingerprint( new Document("a", 2).append("b", "yyy")));
+        assertThat( fingerprint( new Document("a", 1)) ).isNotEqualTo( fingerprint( new Document("a", 1L)));
+        assertThat( fingerprint( new Document("a", 1)) ).isNotEqualTo( fingerprint( new Document("b", 1)));
+        assertThat( fingerprint( new Document("a", new Document("b", 1))) ).isNotEqualTo( fingerprint( new Document("a", new Document("b", "x"))));
+        assertThat( fingerprint( new Document("a", Arrays.asList( 1, 2, 3 ))) ).isEqualTo( fingerprint( new Document("a", Collections.singletonList( 4 ))));
+        assertThat( fingerprint( new Document("a", Arrays.asList( 1, 2 ))) ).isNotEqualTo( fingerprint( new Document("a", Collections.emptyList())));
+        assertThat( fingerprint( new Document("a", Arrays.asList( 1, "x" ))) ).isNotEqualTo( fingerprint( new Document("a", Collections.singletonList( 1 ))));
+        assertThat( fingerprint( new Document("a", new Binary( new byte[1] ))) ).isNotEqualTo( fingerprint( new Document("a", new Binary( BsonBinarySubType.UUID_STANDARD, new byte[16] ))));
+    }
+
+    @Test
+    public void testKnownShapesSkipped() {
+        final MetaCollection decoded = new MetaCollection( new MetaDatabase("db"), "decoded", true );
+        final MetaCollection deduplicated = new MetaCollection( new MetaDatabase("db"), "deduplicated", true );
+        final MetaCollection raw = new MetaCollection( new MetaDatabase("db"), "raw", true );
+        deduplicated.skipKnownShapes = true;
+        for ( int i = 0; i < 60; i++ ){
+            final RawBsonDocument rawDocument = new RawBsonDocument( createDocument( i, 3 ), new DocumentCodec());
+            decoded.scanDocument( rawDocument.decode( new DocumentCodec()), false, 0 );
+            deduplicated.scanRawDocument( rawDocument, false );
+            raw.scanRawDocument( rawDocument, false );
+        }
+        final StringBuilder expected = new StringBuilder(), actual = new StringBuilder();
+        describe( decoded, expected );
+        describe( deduplicated, actual );
+        // THE ObjectIds OF THE SKIPPED DOCUMENTS ARE STILL READ, SO THE SAMPLES ARE FROM THE LAST DOCUMENT
+        assertThat( actual.toString() ).isEqualTo( expected.toString() );
+        assertThat( deduplicated.getField("ref").getObjectId() ).isEqualTo( decoded.getField("ref").getObjectId() );
+        // 6 SHAPES: amount IS INTEGER OR DECIMAL, optional IS SET FOR EACH THIRD DOCUMENT
+        assertThat( deduplicated.skippedDocuments ).isEqualTo( 60 - 6 );
+        // WITHOUT skipKnownShapes ALL DOCUMENTS ARE SCANNED
+        assertThat( raw.skippedDocuments ).isEqualTo( 0 );
+    }
+
+    @Test
+    public void testArraySample() {
+        final List<Document> items = new ArrayList<>();
+        for ( int i = 0; i < 50000; i++ ){
+            items.add( new Document("qty", i ));
+        }
+        items.get( 25000 - 10 ).append("rare", true );
+        items.get( 49999 ).append("last", true );
+        final RawBsonDocument rawDocument = new RawBsonDocument( new Document("_id", new ObjectId()).append("items", items ), new DocumentCodec());
+        for ( boolean raw : new boolean[]{ true, false } ){
+            final MetaCollection collection = new MetaCollection( new MetaDatabase("db"), "orders", true );
+            collection.arraySampleSize = 100;
+            if ( raw ){
+                collection.scanRawDocument( rawDocument, false );
+            } else {
+                collection.scanDocument( rawDocument.decode( new DocumentCodec()), false, 0 );
+            }
+            final MetaObject itemsField = (MetaObject)collection.getField("items");
+            assertThat( itemsField.getField("last") ).isNotNull();
+            assertThat( itemsField.getField("rare") ).isNull();
+            // 100 FIRST, 100 LAST AND 100 FROM THE MIDDLE
+            assertThat( collection.skippedArrayElements ).isEqualTo( 50000 - 300 );
+        }
+    }
+
+    @Test
+    public void testAdaptiveScanStopsWhenConverged() {
+        final List<RawBsonDocument> documents = new ArrayList<>();
+        for ( int i = 0; i < 10000; i++ ){
+            final Document document = new Document("_id", i ).append("name", "name" + i );
+            if ( i == 150 ) document.append("rare", true );
+            if ( i == 9000 ) document.append("late", true );
+            documents.add( new RawBsonDocument( document, new DocumentCodec()));
+        }
+        final ScanOptions options = ScanOptions.builder().strategy( ScanStrategy.adaptive ).convergenceCount( 500 ).build();
+        final MetaCollection collection = new MetaCollection( new MetaDatabase("db"), "people", true );
+        final long cnt = collection.scanUntilConverged( documents.iterator(), options );
+        // THE DOCUMENT 151 ADDS 'rare', THEN 500 DOCUMENTS WITHOUT CHANGES
+        assertThat( cnt ).isEqualTo( 151 + 500 );
+        assertThat( collection.getField("rare") ).isNotNull();
+        assertThat( collection.getField("rare").isMandatory() ).isFalse();
+        assertThat( collection.getField("late") ).isNull();
+    }
+
+    @Test
+    public void testBucketFilters() {
+        final ObjectId first = new ObjectId( new Date( 1500000000000L ));
+        final ObjectId last = new ObjectId( new Date( 1700000000000L ));
+        final List<Document> filters = MetaCollection.createBucketFilters( first, last, 4 );
+        assertThat( filters ).hasSize( 4 );
+        assertThat( ((Document)filters.get(0).get("_id")).keySet() ).containsExactly("$lt");
+        assertThat( ((Document)filters.get(3).get("_id")).keySet() ).containsExactly("$gte");
+        for ( int i = 1; i < filters.size(); i++ ){
+            // EACH BUCKET STARTS WHERE THE PREVIOUS ONE ENDS
+            assertThat( ((Document)filters.get(i).get("_id")).get("$gte") ).isEqualTo( ((Document)filters.get(i - 1).get("_id")).get("$lt") );
+        }
+        final ObjectId secondBoundary = (ObjectId)((Document)filters.get(1).get("_id")).get("$lt");
+        assertThat( secondBoundary.getDate().getTime() / 1000 ).isEqualTo( 1600000000L );
+        // ALL DOCUMENTS CREATED IN THE SAME SECOND GO IN ONE BUCKET
+        assertThat( MetaCollection.createBucketFilters( first, first, 4 ) ).containsExactly( new Document() );
+    }
+}
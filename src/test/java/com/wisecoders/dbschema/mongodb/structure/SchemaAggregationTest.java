@@ -0,0 +1,97 @@
+package com.wisecoders.dbschema.mongodb.structure;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+
+public class SchemaAggregationTest {
+
+    private static Document row( String parent, String key, String type, List<String> elementTypes, int count, int objects, int position ){
+        return new Document("_id", new Document("p", parent).append("k", key).append("t", type).append("e", elementTypes))
+                .append("count", count).append("objects", objects).append("pos", position).append("oid", null);
+    }
+
+    @Test
+    public void testPipeline() {
+        final List<Document> source = Collections.singletonList( new Document("$sample", new Document("size", 10)));
+        final List<Document> pipeline = SchemaAggregation.createPipeline( source, Arrays.asList("", "address"));
+        assertThat( pipeline ).hasSize(4);
+        assertThat( pipeline.get(0) ).isSameAs( source.get(0) );
+        assertThat( pipeline.get(1).get("$project", Document.class).get("kv", Document.class).getList("$concatArrays", Object.class) ).hasSize(2);
+        assertThat( pipeline.get(3).get("$group", Document.class) ).containsKeys("_id", "count", "objects", "pos", "oid", "bin");
+        // THE BINARY VALUES ARE GROUPED ONLY WITH THE UUID LENGTH, THE ARRAY ELEMENTS ONLY IF THEY ARE ObjectIds
+        final String group = pipeline.get(3).get("$group", Document.class).toJson();
+        assertThat( group ).contains("$binarySize");
+        assertThat( group ).contains("\"$type\": \"$$first\"");
+        assertThat( SchemaAggregation.isSample( source )).isTrue();
+        assertThat( SchemaAggregation.isSample( Collections.singletonList( new Document("$limit", 10 )))).isFalse();
+    }
+
+    @Test
+    public void testApply() {
+        final SchemaAggregation aggregation = new SchemaAggregation();
+        final Document id = row("", "_id", "objectId", null, 2, 0, 0 );
+        id.put("oid", new ObjectId());
+        aggregation.addGroupResult( id );
+        aggregation.addGroupResult( row("", "name", "string", null, 2, 0, 1 ));
+        aggregation.addGroupResult( row("", "age", "int", null, 1, 0, 2 ));
+        aggregation.addGroupResult( row("", "age", "double", null, 1, 0, 2 ));
+        aggregation.addGroupResult( row("", "address", "object", null, 2, 2, 3 ));
+        aggregation.addGroupResult( row("address", "city", "string", null, 2, 0, 0 ));
+        aggregation.addGroupResult( row("", "tags", "array", Collections.singletonList("string"), 2, 0, 4 ));
+        aggregation.addGroupResult( row("", "items", "array", Collections.singletonList("object"), 1, 3, 5 ));
+        aggregation.addGroupResult( row("items", "qty", "int", null, 3, 0, 0 ));
+        aggregation.addGroupResult( row("items", "sku", "string", null, 2, 0, 1 ));
+        assertThat( aggregation.getDocumentCount() ).isEqualTo(2);
+
+        final MetaCollection collection = new MetaCollection( new MetaDatabase("db"), "books", true );
+        aggregation.apply( collection, false );
+        assertThat( collection.fields ).extracting( field -> field.name ).containsExactly("_id", "name", "age", "address", "tags", "items");
+        assertThat( collection.getField("_id").getTypeName() ).isEqualTo("ObjectId");
+        assertThat( collection.getField("name").isMandatory() ).isTrue();
+        // BOTH int AND double MAKE A GENERIC TYPE, AS WITH THE CLIENT SCAN
+        assertThat( collection.getField("age").isMandatory() ).isTrue();
+        assertThat( collection.getField("age").getTypeName() ).isEqualTo("Object");
+        assertThat( collection.getField("address") ).isInstanceOf( MetaObject.class );
+        assertThat( ((MetaObject)collection.getField("address")).getField("city").isMandatory() ).isTrue();
+        assertThat( collection.getField("tags").getTypeName() ).isEqualTo("array[string]");
+        final MetaObject items = (MetaObject)collection.getField("items");
+        assertThat( items.getTypeName() ).isEqualTo("array[object]");
+        assertThat( items.isMandatory() ).isFalse();
+        assertThat( items.getField("qty").isMandatory() ).isTrue();
+        assertThat( items.getField("sku").isMandatory() ).isFalse();
+    }
+
+    @Test
+    public void testApplyAsScanDocument() {
+        final SchemaAggregation aggregation = new SchemaAggregation();
+        aggregation.addGroupResult( row("", "_id", "objectId", null, 2, 0, 0 ));
+        aggregation.addGroupResult( row("", "key", "binData", null, 2, 0, 1 ).append("bin", UUID.randomUUID() ));
+        aggregation.addGroupResult( row("", "suburbs", "object", null, 2, 2, 2 ));
+        aggregation.addGroupResult( row("suburbs", "0", "object", null, 2, 2, 0 ));
+        aggregation.addGroupResult( row("suburbs", "1", "object", null, 1, 1, 1 ));
+        aggregation.addGroupResult( row("suburbs.0", "name", "string", null, 2, 0, 0 ));
+        aggregation.addGroupResult( row("suburbs.0", "zip", "string", null, 2, 0, 1 ));
+        aggregation.addGroupResult( row("suburbs.1", "name", "string", null, 1, 0, 0 ));
+
+        final MetaCollection collection = new MetaCollection( new MetaDatabase("db"), "cities", true );
+        aggregation.apply( collection, false );
+        assertThat( collection.getField("key").getTypeName() ).isEqualTo("UUID");
+        final MetaObject suburbs = (MetaObject)collection.getField("suburbs");
+        assertThat( suburbs.getTypeName() ).isEqualTo("array[int]");
+        assertThat( suburbs.fields ).extracting( field -> field.name ).containsExactly("name", "zip");
+        assertThat( suburbs.getField("name").isMandatory() ).isTrue();
+        assertThat( suburbs.getField("zip").isMandatory() ).isFalse();
+    }
+}
@@ -0,0 +1,59 @@
+package com.wisecoders.dbschema.mongodb.wrappers;
+
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/deed.en">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/mongodb-jdbc-driver">public GIT repository</a>.
+ */
+
+public class WrappedAggregateIterableTest {
+
+    private final List<Object> pipelines = new ArrayList<>();
+    private final List<String> options = new ArrayList<>();
+
+    // RECORDS THE PIPELINE SENT TO THE SERVER AND THE OPTIONS SET ON THE DRIVER AggregateIterable
+    private MongoCollection<Document> createCollection() {
+        final Object aggregateIterable = Proxy.newProxyInstance( getClass().getClassLoader(), new Class[]{ AggregateIterable.class }, ( proxy, method, args ) -> {
+            options.add( method.getName() );
+            return method.getReturnType().isInstance( proxy ) ? proxy : null;
+        });
+        return (MongoCollection<Document>)Proxy.newProxyInstance( getClass().getClassLoader(), new Class[]{ MongoCollection.class }, ( proxy, method, args ) -> {
+            switch ( method.getName() ){
+                case "getDocumentClass": return Document.class;
+                case "aggregate": pipelines.add( args[0] ); return aggregateIterable;
+                default: return null;
+            }
+        });
+    }
+
+    @Test
+    public void testLimitAndMaxTime() {
+        final List<Object> pipeline = Arrays.asList( new Document("$match", new Document("qty", 1 )));
+        final WrappedAggregateIterable<Document> iterable = new WrappedAggregateIterable<>( createCollection(), null, pipeline, null );
+        iterable.maxTime( 2, TimeUnit.SECONDS ).limit( 10 );
+        assertThat( iterable.getMaxTimeMS() ).isEqualTo( 2000 );
+        assertThat( pipelines ).isEmpty();
+        iterable.first();
+        assertThat( pipelines ).containsExactly( Arrays.asList( pipeline.get(0), new Document("$limit", 10 )));
+        assertThat( options ).containsExactly("maxTime", "first");
+        assertThat( pipeline ).hasSize(1);
+    }
+
+    @Test
+    public void testNoLimitAfterOut() {
+        final List<Object> pipeline = Arrays.asList( new Document("$match", new Document()), new Document("$out", "archive"));
+        new WrappedAggregateIterable<>( createCollection(), null, pipeline, null ).limit( 10 ).toCollection();
+        assertThat( pipelines ).containsExactly( pipeline );
+    }
+}